@@ -0,0 +1,58 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Differential check for DfaScanner: scans random text with it and with Scanner and compares every token
+ * (type, lexeme, literal and line) and every error. Run by `gradle :bench:checkDfaScanner` (part of `gradle check`),
+ * exits with 1 and prints the first mismatches.
+ *
+ * The text is glued together from pieces picked to hit the DFA's edges: keywords and their prefixes and extensions,
+ * numbers with and without a fraction (and `1.` before something else), unterminated strings and block comments,
+ * nested comments, newlines and characters Lox doesn't know.
+ */
+public final class DfaScannerCheck {
+    private static final String[] PIECES = {
+        "and", "an", "andx", "class", "else", "false", "fals", "for", "fun", "if", "nil", "or", "print", "printx",
+        "return", "super", "this", "true", "var", "while", "_a1", "Var", "x", "1", "12.5", "1.", ".5", "007", "1..2",
+        "\"", "\"str\"", "\"two\nlines\"", "//", "// comment\n", "/*", "*/", "/* a /* nested */ b */", "\n", " ", "\t", "\r",
+        "(", ")", "{", "}", ",", ".", "-", "+", ";", "*", "/", "!", "!=", "=", "==", ">", ">=", "<", "<=", "@", "#", "é"
+    };
+
+    public static void main(String[] args) throws Exception {
+        DifferentialCheck.run(args, 200_000, "DfaScanner", "Scanner", "random inputs", (random, i) -> {
+            String source = randomText(random, random.nextInt(30));
+
+            Diagnostics expectedErrors = new Diagnostics();
+            List<String> expected = render(new Scanner(source, expectedErrors).scanTokens());
+            Diagnostics actualErrors = new Diagnostics();
+            List<String> actual = render(new DfaScanner(source, actualErrors).scanTokens());
+
+            if (expected.equals(actual) && expectedErrors.messages().equals(actualErrors.messages())) return null;
+            return "mismatch for " + quote(source)
+                + "\n  scanner     " + expected + " " + expectedErrors.messages()
+                + "\n  dfa scanner " + actual + " " + actualErrors.messages();
+        });
+    }
+
+    private static List<String> render(List<Token> tokens) {
+        List<String> rendered = new ArrayList<>();
+        for (Token token : tokens) rendered.add(token + " @" + token.line);
+        return rendered;
+    }
+
+    private static String randomText(SplittableRandom random, int pieces) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+            if (random.nextInt(3) == 0) text.append(' ');
+        }
+        return text.toString();
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\n", "\\n") + "\"";
+    }
+}
@@ -0,0 +1,48 @@
+package com.craftinginterpreters.lox;
+
+import java.util.SplittableRandom;
+
+/**
+ * What every differential check (the *Check classes, run by `gradle check`) has in common: run a number of random rounds,
+ * each comparing an implementation with the one it has to agree with, report the first mismatches and fail.
+ *
+ * The arguments are the number of rounds and the seed, both optional. The seed defaults to a fixed one so `gradle check`
+ * gives the same result every time; pass another one (`-PcheckSeed=...` through Gradle) to explore further.
+ * It's printed either way, so any failure can be run again.
+ */
+final class DifferentialCheck {
+    static final long DEFAULT_SEED = 0x5eed_10c5L;
+    // after this many mismatches there's nothing more to learn from going on
+    private static final int MAX_FAILURES = 10;
+
+    /** One round. Returns null if both sides agreed, otherwise a description of the mismatch. */
+    interface Round {
+        String run(SplittableRandom random, long index) throws Exception;
+    }
+
+    private DifferentialCheck() {}
+
+    /**
+     * Runs the rounds and prints "`subject` matches `reference` on N `unit`", or the mismatches and exits with 1.
+     */
+    static void run(String[] args, long defaultRounds, String subject, String reference, String unit, Round round) throws Exception {
+        long rounds = args.length > 0 ? Long.parseLong(args[0]) : defaultRounds;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+        SplittableRandom random = new SplittableRandom(seed);
+
+        int failures = 0;
+        for (long i = 0; i < rounds && failures < MAX_FAILURES; i++) {
+            String mismatch = round.run(random, i);
+            if (mismatch != null) {
+                System.err.println(mismatch);
+                failures++;
+            }
+        }
+
+        if (failures > 0) {
+            System.err.println(subject + " differs from " + reference + " (seed " + seed + ")");
+            System.exit(1);
+        }
+        System.out.println(subject + " matches " + reference + " on " + rounds + " " + unit + " (seed " + seed + ")");
+    }
+}
@@ -0,0 +1,51 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Variable lookups from the innermost of `depth` nested block scopes: a global (by symbol id),
+ * a local in the innermost scope (0 hops) and a local in the outermost block (depth - 1 hops).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnvironmentBenchmark {
+    @Param({"1", "4", "16", "64"})
+    int depth;
+
+    private final Token name = new Token(TokenType.IDENTIFIER, "x", null, 1);
+    private Environment globals;
+    private Environment innermost;
+
+    @Setup
+    public void setUp() {
+        globals = new Environment();
+        globals.defineGlobal(0, 1.0);
+
+        Environment environment = globals;
+        for (int i = 0; i < depth; i++) {
+            environment = new Environment(environment, 1);
+            environment.defineAt(0, (double) i);
+        }
+        innermost = environment;
+    }
+
+    @Benchmark
+    public Object global() {
+        return globals.getGlobal(0, name);
+    }
+
+    @Benchmark
+    public Object innermostLocal() {
+        return innermost.getAt(0, 0, name);
+    }
+
+    @Benchmark
+    public Object outermostLocal() {
+        return innermost.getAt(depth - 1, 0, name);
+    }
+}
@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Differential check for IncrementalParser: applies chains of random edits to random sources and after every edit
+ * compares the incremental snapshot with a full parse of the edited source, trees (token lines included) and errors.
+ * Run by `gradle :bench:checkIncrementalParse` (part of `gradle check`), exits with 1 and prints the first mismatches.
+ *
+ * The pieces edits are made of are picked to break things: half statements, unterminated strings and comments,
+ * newlines (so the statements after the edit move lines) and characters the scanner doesn't know.
+ */
+public final class IncrementalParseCheck {
+    private static final String[] PIECES = {
+        "var a = 1;\n", "print a + \"x\";\n", "{ var b = a * 2; print b; }\n", "a = (1 + 2) * 3;\n",
+        "print \"two\nlines\";\n", "// comment\n", "/* block\n comment */", "var", "print", ";", "{", "}", "(", ")",
+        "=", "+", "-", "!", "a", "b", "1.5", "\"", "\"str\"", "/*", "*/", "//", "\n", " ", "\n\n", "@", "x = y = 3;\n",
+        "nil", "true", "==", "!=", "<=", "print -a;\n", "if", "class", "var c;\n"
+    };
+
+    // how much of the parsing the edits could reuse, for the summary
+    private static long reparsed = 0;
+    private static long statements = 0;
+
+    public static void main(String[] args) throws Exception {
+        DifferentialCheck.run(args, 20_000, "IncrementalParser", "a full parse", "rounds of 10 random edits", (random, round) -> {
+            String source = randomText(random, random.nextInt(40));
+            IncrementalParser.Snapshot snapshot = IncrementalParser.parse(source);
+            String mismatch = compare(snapshot, "parse " + quote(source));
+
+            for (int i = 0; i < 10 && mismatch == null; i++) {
+                int offset = random.nextInt(snapshot.source.length() + 1);
+                int removed = random.nextInt(Math.min(snapshot.source.length() - offset, 12) + 1);
+                String inserted = randomText(random, random.nextInt(3));
+
+                String before = snapshot.source;
+                snapshot = snapshot.edit(offset, removed, inserted);
+                mismatch = compare(snapshot, "edit " + offset + "+" + removed + " -> " + quote(inserted) + " of " + quote(before));
+                reparsed += snapshot.reparsed;
+                statements += snapshot.statements().size();
+            }
+            return mismatch;
+        });
+        System.out.println("  reparsing " + reparsed + " of " + statements + " statements");
+    }
+
+    private static String compare(IncrementalParser.Snapshot snapshot, String what) throws IOException {
+        Diagnostics diagnostics = new Diagnostics();
+        List<Stmt> expected = new Parser(new Scanner(snapshot.source, diagnostics), diagnostics).parse();
+
+        boolean same = Arrays.equals(bytes(expected), bytes(snapshot.statements()))
+            && diagnostics.messages().equals(snapshot.messages())
+            && diagnostics.hadError() == snapshot.hadError();
+        if (same) return null;
+
+        return "mismatch after " + what
+            + "\n  expected errors " + diagnostics.messages()
+            + "\n  got errors      " + snapshot.messages();
+    }
+
+    private static byte[] bytes(List<Stmt> statements) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AstCodec.writeStmts(new DataOutputStream(bytes), statements);
+        return bytes.toByteArray();
+    }
+
+    private static String randomText(SplittableRandom random, int pieces) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+            if (random.nextInt(3) == 0) text.append(' ');
+        }
+        return text.toString();
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\n", "\\n") + "\"";
+    }
+}
@@ -0,0 +1,55 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * What a language service pays per keystroke: parsing the whole file again (fullParse) against letting
+ * IncrementalParser redo only the statement that was edited. editInLine types a character inside a statement
+ * in the middle of the file, editNewLine adds a line break there, so everything after it moves down a line.
+ *
+ * The edit is the same one whatever the size of the file, so as `lines` grows fullParse should grow with it
+ * and the two edits should stay flat. Like an editor would, they pass the edited text along instead of
+ * having the snapshot build it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IncrementalParserBenchmark {
+    @Param({"1000", "20000", "100000"})
+    int lines;
+
+    private IncrementalParser.Snapshot snapshot;
+    private int middle;
+    private String withDigit;
+    private String withNewLine;
+
+    @Setup
+    public void setUp() {
+        String source = Programs.mixed(lines);
+        snapshot = IncrementalParser.parse(source);
+        // just after the `=` of a var declaration halfway down
+        middle = source.indexOf(" = ", source.length() / 2) + 2;
+        withDigit = source.substring(0, middle) + "1" + source.substring(middle);
+        withNewLine = source.substring(0, middle) + "\n" + source.substring(middle);
+    }
+
+    @Benchmark
+    public List<Stmt> fullParse() {
+        return new Parser(new Scanner(snapshot.source)).parse();
+    }
+
+    @Benchmark
+    public IncrementalParser.Snapshot editInLine() {
+        return snapshot.edit(middle, 0, 1, withDigit);
+    }
+
+    @Benchmark
+    public IncrementalParser.Snapshot editNewLine() {
+        return snapshot.edit(middle, 0, 1, withNewLine);
+    }
+}
@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End to end execution of an arithmetic-heavy and a string-heavy program on each engine
+ * (the tree-walking Interpreter, the bytecode VM, the generated JVM classes and the NaN-boxed NanBoxInterpreter).
+ * One operation is one run of the whole program. Run with `-prof gc` to compare allocation rates too.
+ * The JVM classes are generated and loaded once, so after warmup it's the JIT-compiled script that is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+    @Param({"arithmetic", "strings"})
+    String program;
+
+    @Param({"tree", "vm", "jvm", "nanbox"})
+    String engine;
+
+    private List<Stmt> statements;
+    private Chunk chunk;
+    private Interpreter interpreter;
+    private VM vm;
+    private JvmRuntime jvm;
+    private List<JvmRuntime.Script> scripts;
+    private NanBoxInterpreter nanbox;
+
+    @Setup
+    public void setUp() {
+        String source = program.equals("arithmetic") ? Programs.arithmetic(1000) : Programs.strings(1000);
+        SymbolTable symbols = new SymbolTable();
+        statements = Programs.compile(source, symbols);
+        chunk = new Compiler().compile(statements);
+        interpreter = new Interpreter(symbols);
+        vm = new VM(symbols);
+        jvm = new JvmRuntime(symbols);
+        scripts = JvmRuntime.load(new JvmCompiler().compile(statements));
+        nanbox = new NanBoxInterpreter(symbols);
+    }
+
+    @Benchmark
+    public void interpret() {
+        if (engine.equals("vm")) {
+            vm.interpret(chunk);
+        } else if (engine.equals("jvm")) {
+            jvm.interpret(scripts);
+        } else if (engine.equals("nanbox")) {
+            nanbox.interpret(statements);
+        } else {
+            interpreter.interpret(statements);
+        }
+    }
+}
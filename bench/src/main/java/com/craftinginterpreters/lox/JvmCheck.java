@@ -0,0 +1,16 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Differential check for JvmCompiler and JvmRuntime: runs random programs (see Programs.random) as generated JVM classes
+ * and on the Interpreter and compares everything they print and the runtime error they stop at, if any.
+ * Run by `gradle :bench:checkJvm` (part of `gradle check`), exits with 1 and prints the first mismatches.
+ *
+ * Every program is generated and loaded into its own class loader, so this runs fewer programs than the other engine checks.
+ */
+public final class JvmCheck {
+    public static void main(String[] args) throws Exception {
+        DifferentialCheck.run(args, 1_000, "JvmCompiler", "the Interpreter", "random programs", (random, i) ->
+            Programs.compareWithInterpreter(random, "jvm", (statements, symbols, out) ->
+                new JvmRuntime(symbols, out).run(JvmRuntime.load(new JvmCompiler().compile(statements)))));
+    }
+}
@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Differential check for NanBoxInterpreter: runs random programs (see Programs.random) on it and on the Interpreter
+ * and compares everything they print and the runtime error they stop at, if any.
+ * Run by `gradle :bench:checkNanBox` (part of `gradle check`), exits with 1 and prints the first mismatches.
+ *
+ * Some programs are long enough (with enough strings in variables) for the NaN-boxed heap table to be collected several times.
+ */
+public final class NanBoxCheck {
+    public static void main(String[] args) throws Exception {
+        DifferentialCheck.run(args, 5_000, "NanBoxInterpreter", "the Interpreter", "random programs", (random, i) ->
+            Programs.compareWithInterpreter(random, "nanbox", (statements, symbols, out) -> new NanBoxInterpreter(symbols, out).run(statements)));
+    }
+}
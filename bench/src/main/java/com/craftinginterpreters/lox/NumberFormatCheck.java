@@ -0,0 +1,48 @@
+package com.craftinginterpreters.lox;
+
+import java.util.SplittableRandom;
+
+/**
+ * Differential check for NumberFormatter: formats lots of random doubles and compares every result with what
+ * stringify did before it existed (Double.toString minus a trailing ".0"). Run by `gradle :bench:checkNumberFormat`
+ * (part of `gradle check`), exits with 1 and prints the first mismatches if there are any.
+ *
+ * The values mix completely random bit patterns (every kind of double, NaNs included) with the ranges
+ * where the fast path and its edges are: small integers, both zeros, the 1e7 boundary and short fractions.
+ */
+public final class NumberFormatCheck {
+    public static void main(String[] args) throws Exception {
+        double[] edges = {
+            0.0, -0.0, 1.0, -1.0, 9999999.0, -9999999.0, 1e7, -1e7, 1e7 + 1, 9999999.5, 0.5, -0.5,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, Double.MIN_NORMAL, 1e-3, 0.001 - 1e-18
+        };
+
+        StringBuilder buffer = new StringBuilder();
+        DifferentialCheck.run(args, 2_000_000, "NumberFormatter", "Double.toString", "values", (random, i) -> {
+            double value = i < edges.length ? edges[(int) i] : next(random);
+
+            String expected = Double.toString(value);
+            if (expected.endsWith(".0")) expected = expected.substring(0, expected.length() - 2);
+
+            buffer.setLength(0);
+            NumberFormatter.append(buffer, value);
+            String formatted = NumberFormatter.format(value);
+
+            if (expected.equals(formatted) && expected.contentEquals(buffer)) return null;
+            return "Mismatch for " + Double.doubleToRawLongBits(value) + " (" + expected + "): format gave "
+                + formatted + ", append gave " + buffer;
+        });
+    }
+
+    private static double next(SplittableRandom random) {
+        switch (random.nextInt(6)) {
+            case 0: return Double.longBitsToDouble(random.nextLong());
+            case 1: return random.nextInt(-1000, 1000);
+            case 2: return random.nextLong(-20_000_000, 20_000_000);
+            case 3: return (random.nextBoolean() ? 1 : -1) * (1e7 + random.nextInt(-3, 3));
+            case 4: return random.nextInt(-100_000, 100_000) / 8.0;
+            default: return (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(-10, 25));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.craftinginterpreters.lox;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+/**
+ * Differential check for NumberLiterals.parse: parses lots of random number literals and compares every value
+ * bit for bit with Double.parseDouble, which is what the scanners called before. Run by `gradle :bench:checkNumberParse`
+ * (part of `gradle check`), exits with 1 and prints the first mismatches if there are any.
+ *
+ * The literals mix short integers and fractions (the fast paths), values right around 2^53 and 22 fraction digits
+ * (where the fast paths end), leading and trailing zeros, and long digit strings that have to take the slow path.
+ */
+public final class NumberParseCheck {
+    public static void main(String[] args) throws Exception {
+        String[] edges = {
+            "0", "00", "0.0", "1", "0.5", "9007199254740992", "9007199254740993", "9007199254740991.5",
+            "4503599627370496.5", "0.1", "0.3", "123456789012345678901234567890", "1.0000000000000000000001",
+            "0.0000000000000000000001", "0.00000000000000000000001", "179769313486231570000000000000000000000000000000000"
+        };
+
+        DifferentialCheck.run(args, 2_000_000, "NumberLiterals", "Double.parseDouble", "literals", (random, i) -> {
+            String literal = i < edges.length ? edges[(int) i] : next(random);
+            // parsed out of the middle of a line, like the scanners do
+            String line = "x = " + literal + ";";
+
+            double expected = Double.parseDouble(literal);
+            double parsed = NumberLiterals.parse(line, 4, 4 + literal.length());
+            if (Double.doubleToRawLongBits(expected) == Double.doubleToRawLongBits(parsed)) return null;
+            return "Mismatch for " + literal + ": expected " + expected + ", got " + parsed;
+        });
+    }
+
+    private static String next(SplittableRandom random) {
+        switch (random.nextInt(6)) {
+            case 0: return Integer.toString(random.nextInt(0, 100_000));
+            case 1: return random.nextInt(0, 10_000) + "." + random.nextInt(0, 1000);
+            case 2: return Long.toString((1L << 53) + random.nextInt(-20, 20));
+            case 3: return digits(random, 1 + random.nextInt(20)) + "." + digits(random, 1 + random.nextInt(25));
+            case 4: return digits(random, 1 + random.nextInt(40));
+            default: return new BigDecimal(Math.abs(random.nextDouble() * Math.pow(10, random.nextInt(-8, 20)))).toPlainString();
+        }
+    }
+
+    // random digits, with leading and trailing zeros more often than chance would give them
+    private static String digits(SplittableRandom random, int count) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            digits.append(random.nextInt(4) == 0 ? '0' : (char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+}
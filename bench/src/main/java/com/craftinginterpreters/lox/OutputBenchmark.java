@@ -0,0 +1,60 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A print-heavy script on the tree-walker with each kind of output sink. The stream behind them throws the bytes away,
+ * but it's an autoflushing PrintStream like System.out, so `direct` pays for a lock and a flush per `print`
+ * the way the interpreter used to, and `buffered` / `async` show what BufferedOutput and AsyncOutput save.
+ * Half the lines print numbers, which BufferedOutput and AsyncOutput format straight into their buffers (see NumberFormatter).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputBenchmark {
+    @Param({"direct", "buffered", "async"})
+    String sink;
+
+    private List<Stmt> statements;
+    private OutputSink out;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setUp() {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            source.append("print \"line ").append(i).append("\" + \"!\";\n");
+            source.append("print ").append(i).append(" * 2;\n");
+        }
+
+        SymbolTable symbols = new SymbolTable();
+        statements = Programs.compile(source.toString(), symbols);
+
+        PrintStream stream = new PrintStream(OutputStream.nullOutputStream(), true);
+        if (sink.equals("buffered")) {
+            out = new BufferedOutput(stream, BufferedOutput.FlushPolicy.SIZE);
+        } else if (sink.equals("async")) {
+            out = new AsyncOutput(stream);
+        } else {
+            out = stream::println;
+        }
+        interpreter = new Interpreter(symbols, out);
+    }
+
+    @Benchmark
+    public void print() {
+        interpreter.interpret(statements);
+    }
+
+    @TearDown
+    public void tearDown() {
+        out.flush();
+    }
+}
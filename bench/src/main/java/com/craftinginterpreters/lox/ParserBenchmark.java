@@ -0,0 +1,106 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Parser.parse over an already scanned token list. JMH reports `nodes` as AST nodes built per second.
+ * The scanAndParse benchmarks compare building the whole token list first, letting the parser
+ * pull tokens from the Scanner and scanning into a compact TokenBuffer (run with `-prof gc` to see the allocation difference).
+ * loadFromCache is what `--cache` does on a hit instead: hash the source and read the AST back from disk.
+ * parseBroken parses a source where every line is a parse error, collecting them all (error recovery's cost).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"1000", "20000"})
+    int lines;
+
+    private String source;
+    private String broken;
+    private List<Token> tokens;
+    private int nodes;
+    private Path cacheDirectory;
+    private AstCache cache;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        source = Programs.mixed(lines);
+        broken = Programs.broken(lines);
+        tokens = new Scanner(source).scanTokens();
+        nodes = Programs.countNodes(new Parser(tokens).parse());
+
+        cacheDirectory = Files.createTempDirectory("parser-benchmark");
+        cache = new AstCache(cacheDirectory);
+        cache.store(key(), new Parser(tokens).parse());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDirectory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private String key() {
+        return AstCache.key(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)), "UTF-8");
+    }
+
+    @Benchmark
+    public List<Stmt> parse(Counters counters) {
+        List<Stmt> statements = new Parser(tokens).parse();
+        counters.nodes += nodes;
+        return statements;
+    }
+
+    @Benchmark
+    public List<Stmt> scanAndParseList() {
+        return new Parser(new Scanner(source).scanTokens()).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> scanAndParseStreaming() {
+        return new Parser(new Scanner(source)).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> scanAndParseCompact() {
+        return new Parser(new Scanner(source).scanCompact()).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> parseBroken() {
+        Diagnostics diagnostics = new Diagnostics();
+        return new Parser(new Scanner(broken, diagnostics).scanCompact(), diagnostics).parse();
+    }
+
+    @Benchmark
+    public List<Stmt> loadFromCache() {
+        return cache.load(key());
+    }
+}
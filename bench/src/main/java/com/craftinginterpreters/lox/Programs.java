@@ -0,0 +1,204 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generated Lox sources shared by the benchmarks, plus the helpers to turn them into runnable trees.
+ */
+final class Programs {
+    private Programs() {}
+
+    private static final String[] VARIABLES = { "a", "b", "c", "d" };
+    private static final String[] OPERATORS = { "+", "-", "*", "/", "<", "<=", ">", ">=", "==", "!=" };
+    private static final String[] LITERALS = {
+        "0", "1", "2.5", "-0", "(0/0)", "(1/0)", "\"\"", "\"ab\"", "\"a\"", "\"b\"", "true", "false", "nil"
+    };
+
+    // numbers only, a mix of every arithmetic and comparison operator
+    static String arithmetic(int lines) {
+        StringBuilder source = new StringBuilder("var total = 0;\n{ var x = 1; var y = 2; var c;\n");
+        for (int i = 0; i < lines; i++) {
+            source.append("x = (x * 3 + y) / 2 - 1; total = total + x; c = x < total;\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    // concatenation and string equality
+    static String strings(int lines) {
+        StringBuilder source = new StringBuilder("var joined = \"\";\n{ var piece = \"ab\"; var same;\n");
+        for (int i = 0; i < lines; i++) {
+            source.append("joined = joined + piece; same = piece == \"ab\" + \"\";\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    // a bit of everything the scanner knows about: keywords, identifiers, numbers, strings, operators and comments
+    static String mixed(int lines) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            source.append("var value").append(i).append(" = ").append(i).append(".5 * (2 + 3) >= 4 != !true;\n");
+            source.append("print \"line ").append(i).append("\" + \"!\"; // trailing comment\n");
+            source.append("{ value").append(i).append(" = nil; } /* block */\n");
+        }
+        return source.toString();
+    }
+
+    // data-heavy: mostly numeric literals, integers and fractions, many of them repeated
+    static String numbers(int lines) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            source.append("var row").append(i).append(" = ").append(i).append(" + ").append(i % 100).append(".25 * 3.14159 - 1000000 + 0.1 + ")
+                .append(i % 7).append(" * 2.5;\n").append("print 12345678901234567890 + 0.000001 + ").append(i * 31).append(";\n");
+        }
+        return source.toString();
+    }
+
+    // machine-generated junk: every line has a parse error, some of them deep inside nested expressions
+    static String broken(int lines) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            switch (i % 3) {
+                case 0: source.append("var = ").append(i).append(";\n"); break;
+                case 1: source.append("print ((((((").append(i).append(" + ;\n"); break;
+                default: source.append("value").append(i).append(" = ").append(i).append(" ").append(i).append(";\n"); break;
+            }
+        }
+        return source.toString();
+    }
+
+    /**
+     * A random program for the engine checks: every value kind in every operator (NaN and -0 included), variables
+     * in nested blocks, and runtime errors. With `strings` it's only string statements that can't fail,
+     * so a long one runs to the end with plenty of strings alive in variables.
+     */
+    static String random(SplittableRandom random, int statements, boolean strings) {
+        // every variable starts out defined, and `s` and `t` only ever hold strings
+        StringBuilder source = new StringBuilder("var a = 1; var b = \"ab\"; var c = true; var d; var s = \"s\"; var t = \"t\";\n");
+        int depth = 0;
+        for (int i = 0; i < statements; i++) {
+            switch (strings ? 2 + random.nextInt(3) : random.nextInt(8)) {
+                case 0:
+                    source.append("var ").append(variable(random)).append(random.nextBoolean() ? " = " + expression(random, 3) : "").append(";\n");
+                    break;
+                case 1:
+                    source.append(variable(random)).append(" = ").append(expression(random, 3)).append(";\n");
+                    break;
+                case 2:
+                    if (depth < 4) {
+                        source.append("{\n");
+                        depth++;
+                    }
+                    break;
+                case 3:
+                    if (depth > 0) {
+                        source.append("}\n");
+                        depth--;
+                    }
+                    break;
+                case 4:
+                    // strings that stay alive in variables, so collections have something to move
+                    switch (random.nextInt(3)) {
+                        case 0: source.append(random.nextBoolean() ? "s" : "t").append(" = ").append(random.nextBoolean() ? "s" : "t").append(" + \"x\";\n"); break;
+                        case 1: source.append("var b = s + t;\n"); break;
+                        default: source.append("print s == t;\n"); break;
+                    }
+                    break;
+                default:
+                    source.append("print ").append(expression(random, 3)).append(";\n");
+                    break;
+            }
+        }
+        for (; depth > 0; depth--) source.append("}\n");
+        return source.toString();
+    }
+
+    private static String expression(SplittableRandom random, int depth) {
+        int pick = depth == 0 ? random.nextInt(2) : random.nextInt(6);
+        switch (pick) {
+            case 0: return LITERALS[random.nextInt(LITERALS.length)];
+            case 1: return variable(random);
+            case 2: return (random.nextBoolean() ? "-" : "!") + expression(random, depth - 1);
+            case 3: return "(" + expression(random, depth - 1) + ")";
+            default:
+                return expression(random, depth - 1) + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " " + expression(random, depth - 1);
+        }
+    }
+
+    private static String variable(SplittableRandom random) {
+        return VARIABLES[random.nextInt(VARIABLES.length)];
+    }
+
+    /** An engine under test: runs resolved statements, printing to `out`. */
+    interface Engine {
+        void run(List<Stmt> statements, SymbolTable symbols, OutputSink out);
+    }
+
+    /**
+     * One round of an engine check: a random program (now and then a long string-only one) run on the Interpreter
+     * and on `engine`. Returns null if both printed the same and stopped at the same runtime error, else the mismatch.
+     */
+    static String compareWithInterpreter(SplittableRandom random, String name, Engine engine) {
+        String source = random.nextInt(20) == 0 ? random(random, 2000 + random.nextInt(2000), true) : random(random, random.nextInt(40), false);
+
+        List<String> expected = output(source, (statements, symbols, out) -> new Interpreter(symbols, out).run(statements));
+        List<String> actual = output(source, engine);
+        if (expected.equals(actual)) return null;
+
+        return "mismatch for program:\n" + source
+            + "\n  interpreter " + tail(expected)
+            + "\n  " + name + " ".repeat(Math.max(1, 12 - name.length())) + tail(actual);
+    }
+
+    // what the program prints, with the runtime error it stops at (if any) as the last line
+    static List<String> output(String source, Engine engine) {
+        SymbolTable symbols = new SymbolTable();
+        List<Stmt> statements = compile(source, symbols);
+        List<String> output = new ArrayList<>();
+        try {
+            engine.run(statements, symbols, output::add);
+        } catch (RuntimeError error) {
+            output.add(error.getMessage() + " [line " + error.token.line + "]");
+        }
+        return output;
+    }
+
+    private static List<String> tail(List<String> output) {
+        return output.subList(Math.max(0, output.size() - 5), output.size());
+    }
+
+    // globals get their ids from `symbols`, so pass in the symbol table of the engine that will run the result
+    static List<Stmt> compile(String source, SymbolTable symbols) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(symbols).resolve(statements);
+        return statements;
+    }
+
+    static int countNodes(List<Stmt> statements) {
+        int count = 0;
+        for (Stmt statement : statements) count += countNodes(statement);
+        return count;
+    }
+
+    static int countNodes(Stmt stmt) {
+        if (stmt instanceof Stmt.Block) return 1 + countNodes(((Stmt.Block) stmt).statements);
+        if (stmt instanceof Stmt.Expression) return 1 + countNodes(((Stmt.Expression) stmt).expression);
+        if (stmt instanceof Stmt.Print) return 1 + countNodes(((Stmt.Print) stmt).expression);
+
+        Expr initializer = ((Stmt.Var) stmt).initializer;
+        return 1 + (initializer == null ? 0 : countNodes(initializer));
+    }
+
+    static int countNodes(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            return 1 + countNodes(((Expr.Binary) expr).left) + countNodes(((Expr.Binary) expr).right);
+        }
+        if (expr instanceof Expr.Assign) return 1 + countNodes(((Expr.Assign) expr).value);
+        if (expr instanceof Expr.Grouping) return 1 + countNodes(((Expr.Grouping) expr).expression);
+        if (expr instanceof Expr.Unary) return 1 + countNodes(((Expr.Unary) expr).right);
+        return 1;
+    }
+}
@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Builds one string out of `pieces` concatenations (`s = s + piece;` over and over) and prints it once at the end,
+ * on the tree-walker. With Rope values each step is constant time and the single print flattens it,
+ * so the time per operation should grow linearly with `pieces` (copying the whole string on every step was quadratic).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RopeBenchmark {
+    @Param({"25000", "50000", "100000"})
+    int pieces;
+
+    private List<Stmt> statements;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        StringBuilder source = new StringBuilder("var s = \"\";\n{ var piece = \"0123456789\";\n");
+        for (int i = 0; i < pieces; i++) {
+            source.append("s = s + piece;\n");
+        }
+        source.append("}\nprint s;\n");
+
+        SymbolTable symbols = new SymbolTable();
+        statements = Programs.compile(source.toString(), symbols);
+        interpreter = new Interpreter(symbols, blackhole::consume);
+    }
+
+    @Benchmark
+    public void concatenate() {
+        interpreter.interpret(statements);
+    }
+}
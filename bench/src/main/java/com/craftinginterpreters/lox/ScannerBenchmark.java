@@ -0,0 +1,114 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Scanner.scanTokens on large sources. JMH reports `tokens` as tokens per second next to the scans per second.
+ * scanMappedFile runs Utf8Scanner over a memory-mapped copy of the same source (what `--mmap` does),
+ * and readFileAndScan is the default Lox.runFile path for comparison.
+ * scanStreaming and scanDfa pull the same tokens one by one from Scanner and from the table-driven DfaScanner.
+ * scanNumbers scans a data-heavy source that is mostly numeric literals.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScannerBenchmark {
+    @Param({"1000", "20000"})
+    int lines;
+
+    private String source;
+    private String numbers;
+    private Path file;
+    private ByteBuffer mapped;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        source = Programs.mixed(lines);
+        numbers = Programs.numbers(lines);
+
+        file = Files.createTempFile("scanner-benchmark", ".lox");
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Token> scanTokens(Counters counters) {
+        List<Token> tokens = new Scanner(source).scanTokens();
+        counters.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenBuffer scanCompact(Counters counters) {
+        TokenBuffer tokens = new Scanner(source).scanCompact();
+        counters.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenBuffer scanNumbers(Counters counters) {
+        TokenBuffer tokens = new Scanner(numbers).scanCompact();
+        counters.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public Token scanStreaming(Counters counters) {
+        return drain(new Scanner(source), counters);
+    }
+
+    @Benchmark
+    public Token scanDfa(Counters counters) {
+        return drain(new DfaScanner(source), counters);
+    }
+
+    @Benchmark
+    public Token scanMappedFile(Counters counters) {
+        return drain(new Utf8Scanner(mapped), counters);
+    }
+
+    @Benchmark
+    public Token readFileAndScan(Counters counters) throws IOException {
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        return drain(new Scanner(text), counters);
+    }
+
+    private static Token drain(TokenSource scanner, Counters counters) {
+        Token token;
+        do {
+            token = scanner.nextToken();
+            counters.tokens++;
+        } while (token.type != TokenType.EOF);
+        return token;
+    }
+}
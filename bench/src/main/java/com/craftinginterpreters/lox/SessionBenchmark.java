@@ -0,0 +1,46 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Many independent LoxEngine sessions at once, the way a request-serving node would use them:
+ * every operation creates a session, runs a small script in it and throws it away.
+ * `oneThread` is the baseline and `allCores` runs one thread per available processor,
+ * so with no shared state the total throughput should grow with the core count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionBenchmark {
+    @Param({"100"})
+    int lines;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Programs.mixed(lines);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean oneThread(Blackhole blackhole) {
+        return runSession(blackhole);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean allCores(Blackhole blackhole) {
+        return runSession(blackhole);
+    }
+
+    private boolean runSession(Blackhole blackhole) {
+        LoxEngine engine = new LoxEngine(blackhole::consume);
+        return engine.run(source);
+    }
+}
@@ -0,0 +1,65 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The self-specializing Binary nodes against the generic operator switch on a numeric program.
+ * With specialize=false every Binary is pinned to BinaryNode.Generic before the run,
+ * which is what visitBinaryExpr did before specialization existed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpecializationBenchmark {
+    @Param({"true", "false"})
+    boolean specialize;
+
+    private List<Stmt> statements;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setUp() {
+        interpreter = new Interpreter();
+        statements = Programs.compile(Programs.arithmetic(1000), interpreter.symbols);
+        if (!specialize) {
+            for (Stmt statement : statements) pinGeneric(statement);
+        }
+    }
+
+    @Benchmark
+    public void interpret() {
+        interpreter.interpret(statements);
+    }
+
+    private static void pinGeneric(Stmt stmt) {
+        if (stmt instanceof Stmt.Block) {
+            for (Stmt statement : ((Stmt.Block) stmt).statements) pinGeneric(statement);
+        } else if (stmt instanceof Stmt.Expression) {
+            pinGeneric(((Stmt.Expression) stmt).expression);
+        } else if (stmt instanceof Stmt.Print) {
+            pinGeneric(((Stmt.Print) stmt).expression);
+        } else if (stmt instanceof Stmt.Var && ((Stmt.Var) stmt).initializer != null) {
+            pinGeneric(((Stmt.Var) stmt).initializer);
+        }
+    }
+
+    private static void pinGeneric(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            binary.specialization = BinaryNode.Generic.INSTANCE;
+            pinGeneric(binary.left);
+            pinGeneric(binary.right);
+        } else if (expr instanceof Expr.Assign) {
+            pinGeneric(((Expr.Assign) expr).value);
+        } else if (expr instanceof Expr.Grouping) {
+            pinGeneric(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary) {
+            pinGeneric(((Expr.Unary) expr).right);
+        }
+    }
+}
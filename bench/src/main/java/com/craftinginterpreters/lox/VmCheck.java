@@ -0,0 +1,13 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Differential check for the bytecode Compiler and VM: runs random programs (see Programs.random) on them and on the
+ * Interpreter and compares everything they print and the runtime error they stop at, if any.
+ * Run by `gradle :bench:checkVm` (part of `gradle check`), exits with 1 and prints the first mismatches.
+ */
+public final class VmCheck {
+    public static void main(String[] args) throws Exception {
+        DifferentialCheck.run(args, 5_000, "VM", "the Interpreter", "random programs", (random, i) ->
+            Programs.compareWithInterpreter(random, "vm", (statements, symbols, out) -> new VM(symbols, out).run(new Compiler().compile(statements))));
+    }
+}
@@ -0,0 +1,91 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * An on-disk cache of parsed scripts (`--cache`). Entries are keyed by the SHA-256 of the script's bytes,
+ * so a cache hit means the exact same source was parsed before and scanning and parsing can be skipped completely.
+ *
+ * An entry is a CheckedFile (header with a checksum, written atomically) whose payload is AstCodec.SCHEMA followed by
+ * the AstCodec statements. Anything that doesn't check out (wrong header, bad checksum, truncated file,
+ * a node layout that changed) is treated as a miss and the caller parses normally, which then overwrites the entry.
+ */
+class AstCache {
+    private static final int MAGIC = 0x4c584153; // "LXAS"
+    // 2: the schema moved from the header into the payload
+    private static final int VERSION = 2;
+
+    private final Path directory;
+
+    AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The key for a script: the hash covers the charset too, since the same bytes decode differently.
+     */
+    static String key(ByteBuffer bytes, String charset) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(charset.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(bytes.duplicate());
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has to ship SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The cached statements for this key, or null if there is no usable entry.
+     */
+    List<Stmt> load(String key) {
+        Path file = directory.resolve(key + ".ast");
+        if (!Files.isRegularFile(file)) return null;
+
+        try {
+            DataInputStream body = CheckedFile.read(file, MAGIC, VERSION, "Lox AST cache entry");
+            if (body.readInt() != AstCodec.SCHEMA) return null;
+            List<Stmt> statements = AstCodec.readStmts(body);
+            if (body.available() != 0) return null;
+            return statements;
+        } catch (IOException | RuntimeException e) {
+            // unreadable or corrupted, the caller just parses again
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry for this key. A failure only means the next run parses again, so it is not reported.
+     */
+    void store(String key, List<Stmt> statements) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(payload);
+            body.writeInt(AstCodec.SCHEMA);
+            AstCodec.writeStmts(body, statements);
+            body.flush();
+
+            CheckedFile.write(directory.resolve(key + ".ast"), MAGIC, VERSION, payload);
+        } catch (IOException e) {
+            // not worth failing the run over
+        }
+    }
+}
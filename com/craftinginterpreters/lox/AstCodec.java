@@ -0,0 +1,172 @@
+package com.craftinginterpreters.lox;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// generated by tool/GenerateAst, together with Expr and Stmt
+class AstCodec {
+    static final int SCHEMA = 788096504;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    static void writeExpr(DataOutput out, Expr expr) throws IOException {
+        if (expr == null) {
+            out.writeByte(0);
+        } else if (expr instanceof Expr.Assign) {
+            Expr.Assign node = (Expr.Assign) expr;
+            out.writeByte(1);
+            writeToken(out, node.name);
+            writeExpr(out, node.value);
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary node = (Expr.Binary) expr;
+            out.writeByte(2);
+            writeExpr(out, node.left);
+            writeToken(out, node.operator);
+            writeExpr(out, node.right);
+        } else if (expr instanceof Expr.Grouping) {
+            Expr.Grouping node = (Expr.Grouping) expr;
+            out.writeByte(3);
+            writeExpr(out, node.expression);
+        } else if (expr instanceof Expr.Literal) {
+            Expr.Literal node = (Expr.Literal) expr;
+            out.writeByte(4);
+            writeObject(out, node.value);
+        } else if (expr instanceof Expr.Unary) {
+            Expr.Unary node = (Expr.Unary) expr;
+            out.writeByte(5);
+            writeToken(out, node.operator);
+            writeExpr(out, node.right);
+        } else if (expr instanceof Expr.Variable) {
+            Expr.Variable node = (Expr.Variable) expr;
+            out.writeByte(6);
+            writeToken(out, node.name);
+        } else {
+            throw new IllegalArgumentException("Can't write " + expr.getClass().getName());
+        }
+    }
+
+    static Expr readExpr(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 0: return null;
+            case 1: return new Expr.Assign(readToken(in), readExpr(in));
+            case 2: return new Expr.Binary(readExpr(in), readToken(in), readExpr(in));
+            case 3: return new Expr.Grouping(readExpr(in));
+            case 4: return new Expr.Literal(readObject(in));
+            case 5: return new Expr.Unary(readToken(in), readExpr(in));
+            case 6: return new Expr.Variable(readToken(in));
+            default: throw new IOException("Bad Expr tag " + tag);
+        }
+    }
+
+    static void writeStmt(DataOutput out, Stmt stmt) throws IOException {
+        if (stmt == null) {
+            out.writeByte(0);
+        } else if (stmt instanceof Stmt.Block) {
+            Stmt.Block node = (Stmt.Block) stmt;
+            out.writeByte(1);
+            writeStmts(out, node.statements);
+        } else if (stmt instanceof Stmt.Expression) {
+            Stmt.Expression node = (Stmt.Expression) stmt;
+            out.writeByte(2);
+            writeExpr(out, node.expression);
+        } else if (stmt instanceof Stmt.Print) {
+            Stmt.Print node = (Stmt.Print) stmt;
+            out.writeByte(3);
+            writeExpr(out, node.expression);
+        } else if (stmt instanceof Stmt.Var) {
+            Stmt.Var node = (Stmt.Var) stmt;
+            out.writeByte(4);
+            writeToken(out, node.name);
+            writeExpr(out, node.initializer);
+        } else {
+            throw new IllegalArgumentException("Can't write " + stmt.getClass().getName());
+        }
+    }
+
+    static Stmt readStmt(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 0: return null;
+            case 1: return new Stmt.Block(readStmts(in));
+            case 2: return new Stmt.Expression(readExpr(in));
+            case 3: return new Stmt.Print(readExpr(in));
+            case 4: return new Stmt.Var(readToken(in), readExpr(in));
+            default: throw new IOException("Bad Stmt tag " + tag);
+        }
+    }
+
+    static void writeStmts(DataOutput out, List<Stmt> statements) throws IOException {
+        out.writeInt(statements.size());
+        for (Stmt statement : statements) writeStmt(out, statement);
+    }
+
+    static List<Stmt> readStmts(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("Bad statement count " + size);
+        List<Stmt> statements = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) statements.add(readStmt(in));
+        return statements;
+    }
+
+    private static void writeToken(DataOutput out, Token token) throws IOException {
+        out.writeByte(token.type.ordinal());
+        writeString(out, token.lexeme);
+        writeObject(out, token.literal);
+        out.writeInt(token.line);
+    }
+
+    private static Token readToken(DataInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        if (type >= TOKEN_TYPES.length) throw new IOException("Bad token type " + type);
+        return new Token(TOKEN_TYPES[type], readString(in), readObject(in), in.readInt());
+    }
+
+    // literals are only ever nil, booleans, numbers and strings
+    private static void writeObject(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? 2 : 1);
+        } else if (value instanceof Double) {
+            out.writeByte(3);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(4);
+            writeString(out, (String) value);
+        } else {
+            throw new IllegalArgumentException("Can't write literal of type " + value.getClass().getName());
+        }
+    }
+
+    private static Object readObject(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 0: return null;
+            case 1: return false;
+            case 2: return true;
+            case 3: return in.readDouble();
+            case 4: return readString(in);
+            default: throw new IOException("Bad literal tag " + tag);
+        }
+    }
+
+    // not DataOutput.writeUTF, that one stops at 64KB and string literals can be longer
+    private static void writeString(DataOutput out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Bad string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,181 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An OutputSink that takes writing off the interpreter's thread completely (`--async-output`).
+ * println() only drops the line into a ring buffer. A writer thread takes whatever has piled up,
+ * writes it to the real stream as one batch and goes back to sleep when the ring is empty.
+ *
+ * The ring has exactly one producer (the thread running the script) and one consumer (the writer),
+ * so head and tail are each only ever written by one side and plain volatile longs are enough, no locks.
+ * When the ring is full the producer waits for the writer to catch up.
+ * If the writer thread dies, whoever is waiting for it gets its failure instead of waiting forever.
+ *
+ * Numbers don't become Strings on the producer's side: println(double) puts the value in a parallel slot
+ * and the writer formats it straight into its batch, like BufferedOutput does.
+ */
+class AsyncOutput implements OutputSink {
+    private static final String NEWLINE = System.lineSeparator();
+    // writes a batch early if it gets this big, instead of waiting for the ring to empty
+    private static final int MAX_BATCH = 64 * 1024;
+    // what a slot holds when the line is the number in the same slot of `numbers`, compared by identity
+    private static final String NUMBER = new String("<number>");
+
+    private final PrintStream target;
+    private final String[] ring;
+    private final double[] numbers;
+    private final int mask;
+    private final Thread writer;
+
+    // the next slot println() fills, only written by the producer
+    private volatile long head = 0;
+    // the next slot the writer takes, only written by the writer
+    private volatile long tail = 0;
+    // everything before this has reached the target stream, only written by the writer
+    private volatile long written = 0;
+    // set by the writer right before it parks, so the producer knows to wake it up
+    private volatile boolean sleeping = false;
+    // the thread waiting in flush(), if one is, for the writer to wake up when it gets further
+    private volatile Thread flusher = null;
+    // what killed the writer thread, if something did
+    private volatile Throwable failure = null;
+
+    AsyncOutput(PrintStream target) {
+        this(target, 8192);
+    }
+
+    // capacity has to be a power of two
+    AsyncOutput(PrintStream target, int capacity) {
+        this.target = target;
+        this.ring = new String[capacity];
+        this.numbers = new double[capacity];
+        this.mask = capacity - 1;
+
+        writer = new Thread(this::run, "lox-output");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void println(String line) {
+        long position = reserve();
+        ring[(int) position & mask] = line;
+        publish(position);
+    }
+
+    @Override
+    public void println(double number) {
+        long position = reserve();
+        numbers[(int) position & mask] = number;
+        ring[(int) position & mask] = NUMBER;
+        publish(position);
+    }
+
+    // the next free slot, once there is one
+    private long reserve() {
+        long position = head;
+        while (position - tail == ring.length) {
+            // full, give the writer a nudge and wait for it
+            if (!writer.isAlive() && position - tail == ring.length) throw writerStopped();
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(1_000);
+        }
+        return position;
+    }
+
+    private void publish(long position) {
+        head = position + 1;
+        if (sleeping) LockSupport.unpark(writer);
+    }
+
+    // waits until everything printed so far has been written, the writer wakes us up whenever it gets further
+    @Override
+    public void flush() {
+        long target = head;
+        if (written >= target) return;
+
+        flusher = Thread.currentThread();
+        try {
+            // announced before checking `written`, so the writer either sees us waiting or we see how far it got
+            while (written < target) {
+                if (failure != null || !writer.isAlive()) {
+                    if (written < target) throw writerStopped();
+                    break;
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            flusher = null;
+        }
+    }
+
+    // nothing will ever be written anymore once the writer is gone, so waiting for it would hang
+    private IllegalStateException writerStopped() {
+        return new IllegalStateException("The output writer thread stopped", failure);
+    }
+
+    private void run() {
+        try {
+            drain();
+        } catch (Throwable e) {
+            failure = e;
+            wakeFlusher();
+            throw e;
+        }
+    }
+
+    private void drain() {
+        StringBuilder batch = new StringBuilder(MAX_BATCH + 1024);
+
+        for (;;) {
+            long start = tail;
+            long end = head;
+
+            if (start == end) {
+                sleeping = true;
+                // check again after announcing it, or a line published in between would wait for the next one
+                if (head == start) LockSupport.park(this);
+                sleeping = false;
+                continue;
+            }
+
+            for (long position = start; position < end; position++) {
+                int slot = (int) position & mask;
+                String line = ring[slot];
+                if (line == NUMBER) {
+                    NumberFormatter.append(batch, numbers[slot]);
+                } else {
+                    batch.append(line);
+                }
+                batch.append(NEWLINE);
+                ring[slot] = null;
+
+                if (batch.length() >= MAX_BATCH) {
+                    tail = position + 1;
+                    write(batch, position + 1);
+                }
+            }
+            tail = end;
+
+            // caught up with the producer for now, so whatever is left goes out
+            write(batch, end);
+        }
+    }
+
+    private void write(StringBuilder batch, long upTo) {
+        if (batch.length() > 0) {
+            target.append(batch);
+            batch.setLength(0);
+        }
+        target.flush();
+        written = upTo;
+        wakeFlusher();
+    }
+
+    private void wakeFlusher() {
+        Thread waiting = flusher;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+}
@@ -0,0 +1,123 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Self-specializing implementations of a binary operator (the Truffle "node rewriting" idea).
+ *
+ * Every Expr.Binary starts without a specialization. The first time it runs, the Interpreter looks at the
+ * operator and the operand types it actually got and installs the matching specialized node, e.g. NumberAdd
+ * for a `+` that saw two numbers. From then on the site skips the operator switch and only checks that its
+ * guess still holds. If the guess is ever wrong, the node rewrites the site to Generic for good
+ * (so a site that keeps changing types doesn't flip back and forth) and Generic does what visitBinaryExpr always did.
+ */
+abstract class BinaryNode {
+
+    abstract Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right);
+
+    // picks the node for the operand types seen on the first execution
+    static BinaryNode specialize(TokenType operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            switch (operator) {
+                case PLUS: return new NumberAdd();
+                case MINUS: return new NumberSubtract();
+                case STAR: return new NumberMultiply();
+                case SLASH: return new NumberDivide();
+                case GREATER: return new NumberGreater();
+                case GREATER_EQUAL: return new NumberGreaterEqual();
+                case LESS: return new NumberLess();
+                case LESS_EQUAL: return new NumberLessEqual();
+                default: break;
+            }
+        } else if (operator == TokenType.PLUS && Rope.isString(left) && Rope.isString(right)) {
+            return new StringConcat();
+        }
+
+        return Generic.INSTANCE;
+    }
+
+    // the type guess failed, so this site goes back to the generic path and stays there
+    static Object deoptimize(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+        expr.specialization = Generic.INSTANCE;
+        return Generic.INSTANCE.execute(interpreter, expr, left, right);
+    }
+
+    static final class Generic extends BinaryNode {
+        static final Generic INSTANCE = new Generic();
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            return interpreter.binaryOperation(expr.operator, left, right);
+        }
+    }
+
+    static final class NumberAdd extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left + (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class NumberSubtract extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left - (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class NumberMultiply extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left * (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class NumberDivide extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left / (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class NumberGreater extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left > (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class NumberGreaterEqual extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left >= (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class NumberLess extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left < (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class NumberLessEqual extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) return (double)left <= (double)right;
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    static final class StringConcat extends BinaryNode {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (Rope.isString(left) && Rope.isString(right)) return Rope.concat(left, right);
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+}
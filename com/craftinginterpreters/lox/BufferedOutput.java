@@ -0,0 +1,69 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+/**
+ * An OutputSink that collects printed lines in a large buffer and only hands them to the real stream
+ * (System.out for the command line) when its FlushPolicy says so. Writing a line straight to System.out
+ * takes the stream's lock and, since it autoflushes, costs a write to the OS per `print`;
+ * here that happens once per flush instead.
+ */
+class BufferedOutput implements OutputSink {
+    enum FlushPolicy {
+        // after every line, for the REPL where output has to show up right away
+        LINE,
+        // whenever the buffer grows past the threshold, and at exit
+        SIZE,
+        // only when flush() is called, which the command line does at exit (so everything is held in memory until then)
+        EXIT
+    }
+
+    static final int DEFAULT_THRESHOLD = 64 * 1024;
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final PrintStream target;
+    private final FlushPolicy policy;
+    private final int threshold;
+    private final StringBuilder buffer;
+
+    BufferedOutput(PrintStream target, FlushPolicy policy) {
+        this(target, policy, DEFAULT_THRESHOLD);
+    }
+
+    BufferedOutput(PrintStream target, FlushPolicy policy, int threshold) {
+        this.target = target;
+        this.policy = policy;
+        this.threshold = threshold;
+        this.buffer = new StringBuilder(policy == FlushPolicy.LINE ? 128 : threshold + 1024);
+    }
+
+    // synchronized only so the exit hook can flush safely, in practice there's a single printing thread
+    @Override
+    public synchronized void println(String line) {
+        buffer.append(line).append(NEWLINE);
+
+        if (policy == FlushPolicy.LINE || (policy == FlushPolicy.SIZE && buffer.length() >= threshold)) {
+            flush();
+        }
+    }
+
+    // the number goes straight into the buffer, no String in between
+    @Override
+    public synchronized void println(double number) {
+        NumberFormatter.append(buffer, number);
+        buffer.append(NEWLINE);
+
+        if (policy == FlushPolicy.LINE || (policy == FlushPolicy.SIZE && buffer.length() >= threshold)) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (buffer.length() > 0) {
+            target.append(buffer);
+            buffer.setLength(0);
+        }
+        target.flush();
+    }
+}
@@ -0,0 +1,80 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * The file layout AstCache entries and GlobalSnapshots share: a header (magic, format version, payload length,
+ * CRC32 of the payload) followed by the payload. Writing goes to a temporary file next to the target which is then
+ * moved into place, so a reader never sees half a file. Reading checks the whole header before handing out the payload.
+ */
+final class CheckedFile {
+    private CheckedFile() {}
+
+    static void write(Path file, int magic, int version, ByteArrayOutputStream payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(magic);
+                out.writeInt(version);
+                out.writeInt(payload.size());
+                out.writeLong(crc.getValue());
+                payload.writeTo(out);
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } finally {
+            if (temp != null) Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The payload of `file`, once the header and checksum check out. Otherwise an IOException says what's wrong,
+     * `what` names the kind of file in those messages.
+     */
+    static DataInputStream read(Path file, int magic, int version, String what) throws IOException {
+        if (!Files.isRegularFile(file)) throw new IOException("no such file");
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+        try {
+            if (in.readInt() != magic) throw new IOException("not a " + what);
+            int found = in.readInt();
+            if (found != version) throw new IOException(what + " version " + found + ", expected " + version);
+
+            int length = in.readInt();
+            long checksum = in.readLong();
+            if (length < 0 || length != in.available()) throw new IOException("truncated");
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (crc.getValue() != checksum) throw new IOException("corrupted (checksum mismatch)");
+
+            return new DataInputStream(new ByteArrayInputStream(payload));
+        } catch (EOFException e) {
+            throw new IOException("truncated");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A chunk of compiled bytecode: the instruction bytes, the source line of every byte
+ * (so runtime errors can still say which line they came from) and the constant pool.
+ */
+class Chunk {
+    byte[] code = new byte[256];
+    int[] lines = new int[256];
+    int count = 0;
+
+    private final List<Object> constantList = new ArrayList<>();
+    // equal literals share a single entry in the pool
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    Object[] constants;
+
+    // filled in by the Compiler so the VM can size its arrays once up front
+    int maxStack = 0;
+    int localCount = 0;
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+
+        code[count] = (byte) b;
+        lines[count] = line;
+        count++;
+    }
+
+    void writeShort(int value, int line) {
+        write((value >> 8) & 0xff, line);
+        write(value & 0xff, line);
+    }
+
+    int readShort(int offset) {
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    // returns -1 if the pool is full, the caller reports the error
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+
+        if (constantList.size() > 0xffff) return -1;
+
+        constantList.add(value);
+        constantIndex.put(value, constantList.size() - 1);
+        return constantList.size() - 1;
+    }
+
+    // called once compiling is done, the VM reads constants from a plain array
+    void seal() {
+        constants = constantList.toArray();
+    }
+}
@@ -0,0 +1,224 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Just enough of the JVM class file format (JVMS chapter 4) for JvmCompiler: a constant pool, methods with a Code
+ * attribute and nothing else. No fields, no debug attributes, and no StackMapTable, which is fine because the code
+ * JvmCompiler emits never branches (Lox has no control flow yet, every decision happens inside JvmRuntime).
+ */
+class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // the constant pool can't have more than 0xffff entries
+    static final int MAX_CONSTANTS = 0xffff;
+
+    // the class file version of Java 8, the last one where code without branches needs no StackMapTable to verify
+    private static final int MAJOR_VERSION = 52;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    // every entry is added once, the key is the tag plus whatever identifies it
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    int constantCount() {
+        return poolCount;
+    }
+
+    int utf8(String text) {
+        Integer index = entries.get("U" + text);
+        if (index != null) return index;
+
+        try {
+            pool.writeByte(CONSTANT_UTF8);
+            // modified UTF-8, which is exactly what writeUTF produces (and it refuses anything over 64KB, like the JVM)
+            pool.writeUTF(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return add("U" + text, 1);
+    }
+
+    int classRef(String internalName) {
+        Integer index = entries.get("C" + internalName);
+        if (index != null) return index;
+
+        int name = utf8(internalName);
+        write(CONSTANT_CLASS, name);
+        return add("C" + internalName, 1);
+    }
+
+    int string(String text) {
+        Integer index = entries.get("S" + text);
+        if (index != null) return index;
+
+        int value = utf8(text);
+        write(CONSTANT_STRING, value);
+        return add("S" + text, 1);
+    }
+
+    int integer(int value) {
+        Integer index = entries.get("I" + value);
+        if (index != null) return index;
+
+        try {
+            pool.writeByte(CONSTANT_INTEGER);
+            pool.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return add("I" + value, 1);
+    }
+
+    // keyed by the raw bits, so -0.0 and 0.0 (and every NaN the optimizer might fold to) stay apart
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = entries.get("D" + bits);
+        if (index != null) return index;
+
+        try {
+            pool.writeByte(CONSTANT_DOUBLE);
+            pool.writeLong(bits);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // doubles take up two entries
+        return add("D" + bits, 2);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) return index;
+
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        write(tag, ownerIndex, nameAndType);
+        return add(key, 1);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) return index;
+
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        write(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+        return add(key, 1);
+    }
+
+    private void write(int tag, int... indexes) {
+        try {
+            pool.writeByte(tag);
+            for (int index : indexes) pool.writeShort(index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int add(String key, int size) {
+        int index = poolCount;
+        entries.put(key, index);
+        poolCount += size;
+        return index;
+    }
+
+    void method(int access, String name, String descriptor, int maxStack, int maxLocals, byte[] code) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeName = utf8("Code");
+
+        try {
+            methods.writeShort(access);
+            methods.writeShort(nameIndex);
+            methods.writeShort(descriptorIndex);
+            methods.writeShort(1); // just the Code attribute
+
+            methods.writeShort(codeName);
+            methods.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            methods.writeInt(code.length);
+            methods.write(code);
+            methods.writeShort(0); // no exception table
+            methods.writeShort(0); // no attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methodCount++;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) out.writeShort(index);
+
+            out.writeShort(0); // fields
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,248 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the (already resolved) syntax tree into a Chunk of bytecode for the VM.
+ *
+ * Locals don't need their own scope bookkeeping here, the Resolver already gave every local
+ * a slot inside its block. All the compiler does is lay the blocks out one after another
+ * in a single flat locals array: a block's locals start at `base` and a (depth, slot)
+ * pair becomes bases[depth levels up] + slot.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final Chunk chunk = new Chunk();
+    private final List<Integer> bases = new ArrayList<>();
+    private int nextLocal = 0;
+
+    // the line of the last token we saw, used for the line table
+    private int line = 1;
+    private int stackDepth = 0;
+
+    Chunk compile(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+
+        emit(OpCode.RETURN);
+        return finish();
+    }
+
+    // the REPL echoes bare expressions, so this leaves the value on the stack for RETURN to hand back
+    Chunk compileExpression(Expr expression) {
+        expression.accept(this);
+        emit(OpCode.RETURN);
+        return finish();
+    }
+
+    private Chunk finish() {
+        chunk.seal();
+        return chunk;
+    }
+
+    private void emit(byte op) {
+        chunk.write(op, line);
+
+        switch (op) {
+            case OpCode.CONSTANT:
+            case OpCode.NIL:
+            case OpCode.TRUE:
+            case OpCode.FALSE:
+            case OpCode.GET_LOCAL:
+            case OpCode.GET_GLOBAL:
+                push();
+                break;
+            case OpCode.POP:
+            case OpCode.DEFINE_LOCAL:
+            case OpCode.DEFINE_GLOBAL:
+            case OpCode.PRINT:
+            case OpCode.EQUAL:
+            case OpCode.NOT_EQUAL:
+            case OpCode.GREATER:
+            case OpCode.GREATER_EQUAL:
+            case OpCode.LESS:
+            case OpCode.LESS_EQUAL:
+            case OpCode.ADD:
+            case OpCode.SUBTRACT:
+            case OpCode.MULTIPLY:
+            case OpCode.DIVIDE:
+                stackDepth--;
+                break;
+        }
+    }
+
+    private void emit(byte op, int operand) {
+        emit(op);
+        chunk.writeShort(operand, line);
+    }
+
+    private void push() {
+        stackDepth++;
+        if (stackDepth > chunk.maxStack) chunk.maxStack = stackDepth;
+    }
+
+    private int constant(Object value) {
+        int index = chunk.addConstant(value);
+        if (index == -1) {
+            Lox.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private int local(int depth, int slot) {
+        int index = bases.get(bases.size() - 1 - depth) + slot;
+        if (index > 0xffff) {
+            Lox.error(line, "Too many local variables.");
+            return 0;
+        }
+        return index;
+    }
+
+    private int global(int symbol) {
+        if (symbol > 0xffff) {
+            Lox.error(line, "Too many global variables.");
+            return 0;
+        }
+        return symbol;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        int base = nextLocal;
+        bases.add(base);
+        nextLocal += stmt.slotCount;
+        if (nextLocal > chunk.localCount) chunk.localCount = nextLocal;
+
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+
+        // the next sibling block can reuse these slots
+        bases.remove(bases.size() - 1);
+        nextLocal = base;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        stmt.expression.accept(this);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+
+        if (stmt.initializer != null) {
+            stmt.initializer.accept(this);
+
+            // outside of any block it's a global and its slot is the symbol id
+            if (bases.isEmpty()) {
+                emit(OpCode.DEFINE_GLOBAL, global(stmt.slot));
+            } else {
+                emit(OpCode.DEFINE_LOCAL, local(0, stmt.slot));
+            }
+        } else if (bases.isEmpty()) {
+            emit(OpCode.DEFINE_GLOBAL_UNINIT, global(stmt.slot));
+        } else {
+            emit(OpCode.DEFINE_LOCAL_UNINIT, local(0, stmt.slot));
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        expr.value.accept(this);
+
+        line = expr.name.line;
+        if (expr.depth != -1) {
+            emit(OpCode.SET_LOCAL, local(expr.depth, expr.slot));
+        } else {
+            emit(OpCode.SET_GLOBAL, global(expr.slot));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case GREATER: emit(OpCode.GREATER); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+            case LESS: emit(OpCode.LESS); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL); break;
+            case MINUS: emit(OpCode.SUBTRACT); break;
+            case PLUS: emit(OpCode.ADD); break;
+            case SLASH: emit(OpCode.DIVIDE); break;
+            case STAR: emit(OpCode.MULTIPLY); break;
+            default:
+                // the comma operator (and anything else the Interpreter doesn't handle) evaluates both sides and gives nil
+                emit(OpCode.POP);
+                emit(OpCode.POP);
+                emit(OpCode.NIL);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value.equals(true)) {
+            emit(OpCode.TRUE);
+        } else if (expr.value.equals(false)) {
+            emit(OpCode.FALSE);
+        } else {
+            emit(OpCode.CONSTANT, constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expr.right.accept(this);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case MINUS: emit(OpCode.NEGATE); break;
+            case BANG: emit(OpCode.NOT); break;
+            default: break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        if (expr.depth != -1) {
+            emit(OpCode.GET_LOCAL, local(expr.depth, expr.slot));
+            chunk.writeShort(constant(expr.name.lexeme), line);
+        } else {
+            emit(OpCode.GET_GLOBAL, global(expr.slot));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,333 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * A table-driven alternative to Scanner. Instead of a big switch with isAlpha()/isDigit()/peek() calls,
+ * every character is mapped to a character class through a precomputed table, and the scanner
+ * runs a DFA over a state-transition table indexed by (state, class). It keeps going while there is a transition
+ * (maximal munch) and then emits the token for the last accepting state it passed through, backing up if it went past it
+ * (that's how `1.` followed by a non-digit ends up as the number `1` and then a DOT, just like in Scanner).
+ *
+ * Keywords are found with the trie in Keywords, which walks the characters of the lexeme in place, so identifiers don't need a substring
+ * or a map lookup to be classified.
+ *
+ * Nested block comments aren't regular (they need a counter), so the DFA only recognizes the opening `/*`
+ * and the rest is the same small loop as in Scanner.
+ *
+ * It produces exactly the same tokens and errors as Scanner.
+ */
+class DfaScanner implements TokenSource {
+
+    // character classes
+    private static final int C_OTHER = 0;
+    private static final int C_WHITESPACE = 1;
+    private static final int C_NEWLINE = 2;
+    private static final int C_DIGIT = 3;
+    private static final int C_ALPHA = 4;
+    private static final int C_DOT = 5;
+    private static final int C_SLASH = 6;
+    private static final int C_STAR = 7;
+    private static final int C_QUOTE = 8;
+    private static final int C_BANG = 9;
+    private static final int C_EQUAL = 10;
+    private static final int C_LESS = 11;
+    private static final int C_GREATER = 12;
+    private static final int C_SINGLE = 13; // ( ) { } , - + ;
+    private static final int CLASSES = 14;
+
+    // states, ERROR means "no transition", the token ends before this character
+    private static final int ERROR = -1;
+    private static final int S_START = 0;
+    private static final int S_WHITESPACE = 1;
+    private static final int S_NEWLINE = 2;
+    private static final int S_IDENTIFIER = 3;
+    private static final int S_INTEGER = 4;
+    private static final int S_NUMBER_DOT = 5;   // `12.`, only valid if a digit follows
+    private static final int S_FRACTION = 6;
+    private static final int S_DOT = 7;
+    private static final int S_STRING = 8;       // inside a string
+    private static final int S_STRING_END = 9;
+    private static final int S_SLASH = 10;
+    private static final int S_LINE_COMMENT = 11;
+    private static final int S_BLOCK_COMMENT = 12;
+    private static final int S_STAR = 13;
+    private static final int S_BANG = 14;
+    private static final int S_BANG_EQUAL = 15;
+    private static final int S_EQUAL = 16;
+    private static final int S_EQUAL_EQUAL = 17;
+    private static final int S_LESS = 18;
+    private static final int S_LESS_EQUAL = 19;
+    private static final int S_GREATER = 20;
+    private static final int S_GREATER_EQUAL = 21;
+    private static final int S_SINGLE = 22;
+    private static final int S_UNEXPECTED = 23;
+    private static final int STATES = 24;
+
+    // what to do when a token ends in a given state
+    private static final int A_NONE = 0;     // not an accepting state
+    private static final int A_TOKEN = 1;    // a token whose type is fixed by the state (ACCEPT_TYPE)
+    private static final int A_SINGLE = 2;   // a single character token, type from SINGLE_TYPE
+    private static final int A_SKIP = 3;     // whitespace, newlines and line comments
+    private static final int A_IDENTIFIER = 4;
+    private static final int A_NUMBER = 5;
+    private static final int A_STRING = 6;
+    private static final int A_BLOCK_COMMENT = 7;
+    private static final int A_UNEXPECTED = 8;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+    private static final TokenType[] SINGLE_TYPE = new TokenType[128];
+    private static final int[] TRANSITIONS = new int[STATES * CLASSES];
+    private static final int[] ACTION = new int[STATES];
+    private static final TokenType[] ACCEPT_TYPE = new TokenType[STATES];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = C_ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = C_ALPHA;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = C_DIGIT;
+        CHAR_CLASS['_'] = C_ALPHA;
+        CHAR_CLASS[' '] = C_WHITESPACE;
+        CHAR_CLASS['\r'] = C_WHITESPACE;
+        CHAR_CLASS['\t'] = C_WHITESPACE;
+        CHAR_CLASS['\n'] = C_NEWLINE;
+        CHAR_CLASS['.'] = C_DOT;
+        CHAR_CLASS['/'] = C_SLASH;
+        CHAR_CLASS['*'] = C_STAR;
+        CHAR_CLASS['"'] = C_QUOTE;
+        CHAR_CLASS['!'] = C_BANG;
+        CHAR_CLASS['='] = C_EQUAL;
+        CHAR_CLASS['<'] = C_LESS;
+        CHAR_CLASS['>'] = C_GREATER;
+
+        single('(', LEFT_PAREN);
+        single(')', RIGHT_PAREN);
+        single('{', LEFT_BRACE);
+        single('}', RIGHT_BRACE);
+        single(',', COMMA);
+        single('-', MINUS);
+        single('+', PLUS);
+        single(';', SEMICOLON);
+
+        java.util.Arrays.fill(TRANSITIONS, ERROR);
+
+        on(S_START, C_WHITESPACE, S_WHITESPACE);
+        on(S_START, C_NEWLINE, S_NEWLINE);
+        on(S_START, C_ALPHA, S_IDENTIFIER);
+        on(S_START, C_DIGIT, S_INTEGER);
+        on(S_START, C_DOT, S_DOT);
+        on(S_START, C_QUOTE, S_STRING);
+        on(S_START, C_SLASH, S_SLASH);
+        on(S_START, C_STAR, S_STAR);
+        on(S_START, C_BANG, S_BANG);
+        on(S_START, C_EQUAL, S_EQUAL);
+        on(S_START, C_LESS, S_LESS);
+        on(S_START, C_GREATER, S_GREATER);
+        on(S_START, C_SINGLE, S_SINGLE);
+        on(S_START, C_OTHER, S_UNEXPECTED);
+
+        on(S_IDENTIFIER, C_ALPHA, S_IDENTIFIER);
+        on(S_IDENTIFIER, C_DIGIT, S_IDENTIFIER);
+
+        on(S_INTEGER, C_DIGIT, S_INTEGER);
+        on(S_INTEGER, C_DOT, S_NUMBER_DOT);
+        on(S_NUMBER_DOT, C_DIGIT, S_FRACTION);
+        on(S_FRACTION, C_DIGIT, S_FRACTION);
+
+        // a string takes everything up to the closing quote, newlines included
+        for (int c = 0; c < CLASSES; c++) on(S_STRING, c, S_STRING);
+        on(S_STRING, C_QUOTE, S_STRING_END);
+
+        on(S_SLASH, C_SLASH, S_LINE_COMMENT);
+        on(S_SLASH, C_STAR, S_BLOCK_COMMENT);
+        for (int c = 0; c < CLASSES; c++) on(S_LINE_COMMENT, c, S_LINE_COMMENT);
+        on(S_LINE_COMMENT, C_NEWLINE, ERROR);
+
+        on(S_BANG, C_EQUAL, S_BANG_EQUAL);
+        on(S_EQUAL, C_EQUAL, S_EQUAL_EQUAL);
+        on(S_LESS, C_EQUAL, S_LESS_EQUAL);
+        on(S_GREATER, C_EQUAL, S_GREATER_EQUAL);
+
+        accept(S_WHITESPACE, A_SKIP, null);
+        accept(S_NEWLINE, A_SKIP, null);
+        accept(S_LINE_COMMENT, A_SKIP, null);
+        accept(S_BLOCK_COMMENT, A_BLOCK_COMMENT, null);
+        accept(S_IDENTIFIER, A_IDENTIFIER, null);
+        accept(S_INTEGER, A_NUMBER, null);
+        accept(S_FRACTION, A_NUMBER, null);
+        accept(S_STRING_END, A_STRING, null);
+        accept(S_SINGLE, A_SINGLE, null);
+        accept(S_UNEXPECTED, A_UNEXPECTED, null);
+        accept(S_DOT, A_TOKEN, DOT);
+        accept(S_SLASH, A_TOKEN, SLASH);
+        accept(S_STAR, A_TOKEN, STAR);
+        accept(S_BANG, A_TOKEN, BANG);
+        accept(S_BANG_EQUAL, A_TOKEN, BANG_EQUAL);
+        accept(S_EQUAL, A_TOKEN, EQUAL);
+        accept(S_EQUAL_EQUAL, A_TOKEN, EQUAL_EQUAL);
+        accept(S_LESS, A_TOKEN, LESS);
+        accept(S_LESS_EQUAL, A_TOKEN, LESS_EQUAL);
+        accept(S_GREATER, A_TOKEN, GREATER);
+        accept(S_GREATER_EQUAL, A_TOKEN, GREATER_EQUAL);
+    }
+
+    private static void single(char c, TokenType type) {
+        CHAR_CLASS[c] = C_SINGLE;
+        SINGLE_TYPE[c] = type;
+    }
+
+    private static void on(int state, int charClass, int next) {
+        TRANSITIONS[state * CLASSES + charClass] = next;
+    }
+
+    private static void accept(int state, int action, TokenType type) {
+        ACTION[state] = action;
+        ACCEPT_TYPE[state] = type;
+    }
+
+    private final String source;
+    private final int length;
+    private final Diagnostics diagnostics;
+    private final NumberLiterals numbers = new NumberLiterals();
+    private Token scanned = null;
+    private int start = 0;
+    private int current = 0;
+    private int line = 1;
+
+    DfaScanner(String source) {
+        this(source, Diagnostics.CONSOLE);
+    }
+
+    DfaScanner(String source, Diagnostics diagnostics) {
+        this.source = source;
+        this.length = source.length();
+        this.diagnostics = diagnostics;
+    }
+
+    List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != EOF);
+
+        return tokens;
+    }
+
+    @Override
+    public Token nextToken() {
+        while (current < length) {
+            start = current;
+            scanToken();
+
+            if (scanned != null) {
+                Token token = scanned;
+                scanned = null;
+                return token;
+            }
+        }
+
+        return new Token(EOF, "", null, line);
+    }
+
+    private static int classOf(char c) {
+        return c < 128 ? CHAR_CLASS[c] : C_OTHER;
+    }
+
+    private void scanToken() {
+        int state = S_START;
+        int accepted = ERROR;
+        int acceptedEnd = start;
+        int position = start;
+
+        // run the DFA as far as it goes, remembering the last accepting state
+        while (position < length) {
+            char c = source.charAt(position);
+            int next = TRANSITIONS[state * CLASSES + classOf(c)];
+            if (next == ERROR) break;
+
+            if (c == '\n') line++;
+            position++;
+            state = next;
+
+            if (ACTION[state] != A_NONE) {
+                accepted = state;
+                acceptedEnd = position;
+            }
+        }
+
+        if (accepted == ERROR) {
+            // the only way to never reach an accepting state is running out of input inside a string
+            current = position;
+            diagnostics.error(line, "Unterminated String");
+            return;
+        }
+
+        current = acceptedEnd;
+
+        switch (ACTION[accepted]) {
+            case A_TOKEN:
+                addToken(ACCEPT_TYPE[accepted], null);
+                break;
+            case A_SINGLE:
+                addToken(SINGLE_TYPE[source.charAt(start)], null);
+                break;
+            case A_IDENTIFIER:
+                addToken(keyword(), null);
+                break;
+            case A_NUMBER:
+                addToken(NUMBER, numbers.intern(NumberLiterals.parse(source, start, current)));
+                break;
+            case A_STRING:
+                addToken(STRING, source.substring(start + 1, current - 1));
+                break;
+            case A_BLOCK_COMMENT:
+                blockComment();
+                break;
+            case A_UNEXPECTED:
+                diagnostics.error(line, "Unexpected character.");
+                break;
+            default:
+                // A_SKIP
+                break;
+        }
+    }
+
+    // walks the keyword trie over the lexeme, no substring and no hashing
+    private TokenType keyword() {
+        TokenType keyword = Keywords.lookup(source, start, current);
+        return keyword != null ? keyword : IDENTIFIER;
+    }
+
+    // the same nesting loop as Scanner, we come in right after the opening /*
+    private void blockComment() {
+        int nesting_level = 1;
+        while (nesting_level > 0 && current < length) {
+            char c = source.charAt(current);
+            char next = current + 1 < length ? source.charAt(current + 1) : '\0';
+
+            if (c == '/' && next == '*') {
+                nesting_level++;
+                current += 2;
+            } else if (c == '*' && next == '/') {
+                nesting_level--;
+                current += 2;
+            } else {
+                if (c == '\n') line++;
+                current++;
+            }
+        }
+
+        if (nesting_level > 0) {
+            diagnostics.error(line, "Unterminated block comment");
+        }
+    }
+
+    private void addToken(TokenType type, Object literal) {
+        scanned = new Token(type, source.substring(start, current), literal, line);
+    }
+}
@@ -0,0 +1,98 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Where the scanners and the parser report compile errors.
+ * The REPL uses CONSOLE, which prints every error right away and sets Lox.hadError like before.
+ * Scripts get their own instance, which only collects the messages, so several files can be scanned and parsed
+ * at the same time without their errors getting mixed up; Lox prints them afterwards, file by file.
+ *
+ * A collecting instance keeps every error as a Diagnostic (token, line and message) for tools to read after the parse.
+ * The "[line 3] Error at 'x': ..." text is only put together when somebody asks for messages().
+ */
+class Diagnostics {
+    static final Diagnostics CONSOLE = new Diagnostics(true);
+
+    /**
+     * One compile error.
+     */
+    static final class Diagnostic {
+        // what the parser was looking at, null for scanner errors which only know their line
+        final Token token;
+        final int line;
+        final String message;
+
+        Diagnostic(Token token, int line, String message) {
+            this.token = token;
+            this.line = line;
+            this.message = message;
+        }
+
+        // the " at 'x'" part of the printed error
+        String where() {
+            if (token == null) return "";
+            if (token.type == TokenType.EOF) return " at end";
+            return " at '" + token.lexeme + "'";
+        }
+
+        // exactly what the command line prints for it
+        @Override
+        public String toString() {
+            return "[line " + line + "] Error" + where() + ": " + message;
+        }
+    }
+
+    private final boolean console;
+    private final List<Diagnostic> errors = new ArrayList<>();
+    private int errorCount = 0;
+
+    Diagnostics() {
+        this(false);
+    }
+
+    private Diagnostics(boolean console) {
+        this.console = console;
+    }
+
+    void error(int line, String message) {
+        report(new Diagnostic(null, line, message));
+    }
+
+    void error(Token token, String message) {
+        report(new Diagnostic(token, token.line, message));
+    }
+
+    private void report(Diagnostic error) {
+        errorCount++;
+        if (console) {
+            Lox.report(error.line, error.where(), error.message);
+            return;
+        }
+
+        errors.add(error);
+    }
+
+    boolean hadError() {
+        return console ? Lox.hadError : !errors.isEmpty();
+    }
+
+    // every error reported so far. For CONSOLE that's the whole REPL session, so take the difference
+    int errorCount() {
+        return errorCount;
+    }
+
+    // in the order they were reported (always empty for CONSOLE, which doesn't keep them)
+    List<Diagnostic> errors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    // the same, worded like the command line prints them
+    List<String> messages() {
+        List<String> messages = new ArrayList<>(errors.size());
+        for (Diagnostic error : errors) messages.add(error.toString());
+        return messages;
+    }
+}
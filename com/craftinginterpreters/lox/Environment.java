@@ -1,12 +1,14 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 
 //  where the bindings that associate variables to values are stored == environments
 class Environment {
-    private final Map<String, Object> values = new HashMap<>();  
+    // Both kinds of scope keep their values in a plain array, so nothing is ever looked up by name.
+    // Locals are reached by the (depth, slot) the Resolver worked out.
+    // The global scope is indexed by symbol id (see SymbolTable) and grows as the REPL defines new globals.
+    private Object[] slots;
     final Environment enclosing;
 
 
@@ -21,70 +23,116 @@ class Environment {
      * If we just did: new Object(), we'd get a generic Object
      * By creating anonymous subclass, we can override methods & we override toString()
      */
-    private static final Object UNINITIALIZED = new Object() {
+    static final Object UNINITIALIZED = new Object() {
         @Override
         public String toString() {
             return "UNITIALIZED";
         }
     };
 
+    // same pattern, marks a global slot that has a symbol id but was never defined with `var`
+    private static final Object UNDEFINED = new Object() {
+        @Override
+        public String toString() {
+            return "UNDEFINED";
+        }
+    };
+
     // this constructor is used for the global scope's environment which ends the chain
     Environment() {
         enclosing = null;
+        slots = new Object[64];
+        Arrays.fill(slots, UNDEFINED);
     }
 
     // This other constructor creates a new local scope nested inside the given outer one.
-    Environment(Environment enclosing) {
+    // size is the number of locals the Resolver found declared directly in this scope.
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        slots = new Object[size];
     }
     
 
     
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            Object value = values.get(name.lexeme);
-
+    // for the global scope, `symbol` is the id the Resolver interned the name as
+    Object getGlobal(int symbol, Token name) {
+        if (symbol >= slots.length || slots[symbol] == UNDEFINED) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
 
-            if (value == UNINITIALIZED) {
-                throw new RuntimeError(
-                    name, 
-                    "Variable '" + name.lexeme + "' used before initialization."
-                );
-            }
+        return checkInitialized(name, slots[symbol]);
+    }
 
+    // no name lookups at all here, we hop `distance` environments out and index straight into the slot
+    Object getAt(int distance, int slot, Token name) {
+        return checkInitialized(name, ancestor(distance).slots[slot]);
+    }
 
-            return value;
+    private Object checkInitialized(Token name, Object value) {
+        if (value == UNINITIALIZED) {
+            throw new RuntimeError(
+                name, 
+                "Variable '" + name.lexeme + "' used before initialization."
+            );
         }
 
-        // if the variable is not found in the current environment, we check the enclosing one
-        if(enclosing != null) {
-            return enclosing.get(name);
+        return value;
+    }
+
+    Environment ancestor(int distance) {
+        Environment environment = this;
+        for (int i = 0; i < distance; i++) {
+            environment = environment.enclosing;
         }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return environment;
     }
 
     // diff. between assignment and definition is that assignment is not allowed to create a new variable. 
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-          values.put(name.lexeme, value);
-          return;
+    void assignGlobal(int symbol, Token name, Object value) {
+        if (symbol >= slots.length || slots[symbol] == UNDEFINED) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
         }
 
-        // Again, if the variable isn’t in this environment, it checks the outer one, recursively.
-        if(enclosing != null) {
-            enclosing.assign(name, value);
-            return;
-        }
+        slots[symbol] = value;
+    }
+
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
+    }
+
+    void defineGlobal(int symbol, Object value) {
+        ensureGlobal(symbol);
+        slots[symbol] = value;
+    }
+
+    void defineGlobalUninitialized(int symbol) {
+        defineGlobal(symbol, UNINITIALIZED);
+    }
+
+    // for GlobalSnapshot: whether `var` ever defined this global, and its value as stored (UNINITIALIZED included)
+    boolean isGlobalDefined(int symbol) {
+        return symbol < slots.length && slots[symbol] != UNDEFINED;
+    }
+
+    Object globalValue(int symbol) {
+        return slots[symbol];
+    }
+
+    // the REPL can keep defining new globals, so the global array grows to fit
+    private void ensureGlobal(int symbol) {
+        if (symbol < slots.length) return;
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        int size = slots.length;
+        slots = Arrays.copyOf(slots, Math.max(size * 2, symbol + 1));
+        Arrays.fill(slots, size, slots.length, UNDEFINED);
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    void defineAt(int slot, Object value) {
+        slots[slot] = value;
     }
 
-    void defineUninitialized(String name) {
-        values.put(name, UNINITIALIZED);
+    void defineUninitializedAt(int slot) {
+        slots[slot] = UNINITIALIZED;
     }
 }
@@ -12,6 +12,15 @@ abstract class Expr {
       R visitVariableExpr(Variable expr);
     }
 
+    interface LongVisitor {
+      long visitAssignExpr(Assign expr);
+      long visitBinaryExpr(Binary expr);
+      long visitGroupingExpr(Grouping expr);
+      long visitLiteralExpr(Literal expr);
+      long visitUnaryExpr(Unary expr);
+      long visitVariableExpr(Variable expr);
+    }
+
     static class Assign extends Expr {
         Assign(Token name, Expr value) {
           this.name = name;
@@ -23,8 +32,15 @@ abstract class Expr {
           return visitor.visitAssignExpr(this);
         }
 
+        @Override
+        long acceptLong(LongVisitor visitor) {
+          return visitor.visitAssignExpr(this);
+        }
+
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
     }
 
     static class Binary extends Expr {
@@ -39,9 +55,15 @@ abstract class Expr {
           return visitor.visitBinaryExpr(this);
         }
 
+        @Override
+        long acceptLong(LongVisitor visitor) {
+          return visitor.visitBinaryExpr(this);
+        }
+
         final Expr left;
         final Token operator;
         final Expr right;
+        BinaryNode specialization;
     }
 
     static class Grouping extends Expr {
@@ -54,6 +76,11 @@ abstract class Expr {
           return visitor.visitGroupingExpr(this);
         }
 
+        @Override
+        long acceptLong(LongVisitor visitor) {
+          return visitor.visitGroupingExpr(this);
+        }
+
         final Expr expression;
     }
 
@@ -67,6 +94,11 @@ abstract class Expr {
           return visitor.visitLiteralExpr(this);
         }
 
+        @Override
+        long acceptLong(LongVisitor visitor) {
+          return visitor.visitLiteralExpr(this);
+        }
+
         final Object value;
     }
 
@@ -81,6 +113,11 @@ abstract class Expr {
           return visitor.visitUnaryExpr(this);
         }
 
+        @Override
+        long acceptLong(LongVisitor visitor) {
+          return visitor.visitUnaryExpr(this);
+        }
+
         final Token operator;
         final Expr right;
     }
@@ -95,9 +132,17 @@ abstract class Expr {
           return visitor.visitVariableExpr(this);
         }
 
+        @Override
+        long acceptLong(LongVisitor visitor) {
+          return visitor.visitVariableExpr(this);
+        }
+
         final Token name;
+        int depth = -1;
+        int slot;
     }
 
 
     abstract <R> R accept(Visitor<R> visitor);
+    abstract long acceptLong(LongVisitor visitor);
 }
@@ -0,0 +1,134 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Saves the tree-walker's global variables to a file and loads them back (`:save` / `:load` in the REPL,
+ * `--load=<file>` at startup), so a long REPL session can be restarted without replaying its whole prelude.
+ *
+ * The file is a CheckedFile (header with a checksum, written atomically) whose payload is every defined global
+ * in symbol id order as its name and a tagged value.
+ * Declared-but-unassigned globals (`var a;`) keep their UNINITIALIZED marker, and ropes are written as the string
+ * they stand for.
+ */
+class GlobalSnapshot {
+    private static final int MAGIC = 0x4c584753; // "LXGS"
+    private static final int VERSION = 1;
+
+    private static final int NIL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+    private static final int UNINITIALIZED = 5;
+
+    private GlobalSnapshot() {}
+
+    /**
+     * Writes the interpreter's globals to `file`, returns how many there were.
+     */
+    static int save(Path file, Interpreter interpreter) throws IOException {
+        SymbolTable symbols = interpreter.symbols;
+        Environment globals = interpreter.globals;
+
+        int count = 0;
+        for (int id = 0; id < symbols.size(); id++) {
+            if (globals.isGlobalDefined(id)) count++;
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(payload);
+        body.writeInt(count);
+        for (int id = 0; id < symbols.size(); id++) {
+            if (!globals.isGlobalDefined(id)) continue;
+            writeString(body, symbols.name(id));
+            writeValue(body, globals.globalValue(id));
+        }
+        body.flush();
+
+        CheckedFile.write(file, MAGIC, VERSION, payload);
+        return count;
+    }
+
+    /**
+     * Defines every global saved in `file` in the interpreter (replacing globals with the same name),
+     * returns how many there were. Nothing is defined unless the whole file checks out.
+     */
+    static int load(Path file, Interpreter interpreter) throws IOException {
+        DataInputStream body = CheckedFile.read(file, MAGIC, VERSION, "Lox globals snapshot");
+        try {
+            int count = body.readInt();
+            if (count < 0) throw new IOException("corrupted (bad global count)");
+
+            // everything is read before anything is defined, a bad entry halfway must not leave half a snapshot behind
+            String[] names = new String[count];
+            Object[] values = new Object[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = readString(body);
+                values[i] = readValue(body);
+            }
+            if (body.available() != 0) throw new IOException("corrupted (trailing bytes)");
+
+            for (int i = 0; i < count; i++) {
+                interpreter.globals.defineGlobal(interpreter.symbols.intern(names[i]), values[i]);
+            }
+            return count;
+        } catch (EOFException e) {
+            throw new IOException("truncated");
+        }
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NIL);
+        } else if (value == Environment.UNINITIALIZED) {
+            out.writeByte(UNINITIALIZED);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(NUMBER);
+            out.writeDouble((Double) value);
+        } else if (Rope.isString(value)) {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        } else {
+            throw new IOException("Can't save a value of type " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NIL: return null;
+            case FALSE: return false;
+            case TRUE: return true;
+            case NUMBER: return in.readDouble();
+            case STRING: return readString(in);
+            case UNINITIALIZED: return Environment.UNINITIALIZED;
+            default: throw new IOException("Bad value tag " + tag);
+        }
+    }
+
+    // like AstCodec, not writeUTF since that one stops at 64KB and strings can be longer
+    private static void writeString(DataOutput out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Bad string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,552 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Re-parses a source after an edit without starting over from offset 0, for tools (like a language service)
+ * that parse the same file again on every keystroke.
+ *
+ * A Snapshot remembers every top-level statement with the part of the source it came from and the tokens it was
+ * parsed from. An edit reparses from the statement it damaged, one top-level statement at a time, until the parser
+ * is back on a statement boundary that an old statement started on past the edit, the same kind of boundary
+ * Parser.synchronize looks for. The tokens of the damaged statements that come before the edit are replayed
+ * instead of scanned again, and from the resync point on the old statements are reused as they are.
+ *
+ * The statements sit in a persistent balanced tree where every statement only knows its own length and how many
+ * lines it spans, so statements behind an edit never have to be moved: their offsets and lines are sums over the tree.
+ * An edit is a split and a join, O(log n) plus the damaged statements, and shares everything else with the old
+ * snapshot. Pass the edited text along (see edit) and nothing per edit depends on the size of the file.
+ *
+ * If an edit adds or removes lines, the reused statements' tokens are a few lines off. Their trees are copied
+ * with the right lines the first time somebody asks for them (see statements()), not on every edit.
+ */
+final class IncrementalParser {
+    private static final Diagnostics.Diagnostic[] NO_ERRORS = new Diagnostics.Diagnostic[0];
+
+    private IncrementalParser() {}
+
+    /**
+     * A parsed version of a source. Edit it with edit(), the old snapshot stays as it is.
+     *
+     * The statements tile the source: one starts where the previous one ended (the first at 0) and ends where
+     * the next one's first token starts, so comments and whitespace go with the statement before them.
+     */
+    static final class Snapshot {
+        final String source;
+        // how many top-level statements were parsed to make this snapshot, the rest were reused
+        final int reparsed;
+
+        // the statements in source order, null if there are none
+        private final Node root;
+        // errors in a source without a single statement (e.g. just an unterminated comment)
+        private final Diagnostics.Diagnostic[] loose;
+
+        private Snapshot(String source, Node root, Diagnostics.Diagnostic[] loose, int reparsed) {
+            this.source = source;
+            this.reparsed = reparsed;
+            this.root = root;
+            this.loose = loose;
+        }
+
+        // the same thing Parser.parse() returns for the source
+        List<Stmt> statements() {
+            List<Stmt> statements = new ArrayList<>(size(root));
+            addStatements(root, 1, statements);
+            return statements;
+        }
+
+        // in source order, the same errors a full parse reports
+        List<Diagnostics.Diagnostic> errors() {
+            List<Diagnostics.Diagnostic> all = new ArrayList<>(Arrays.asList(loose));
+            addErrors(root, 1, all);
+            return all;
+        }
+
+        // the same, worded like the command line prints them
+        List<String> messages() {
+            List<String> messages = new ArrayList<>();
+            for (Diagnostics.Diagnostic error : errors()) messages.add(error.toString());
+            return messages;
+        }
+
+        boolean hadError() {
+            return loose.length > 0 || (root != null && root.hadError);
+        }
+
+        /**
+         * The snapshot for this source with `removed` characters at `offset` replaced by `inserted`.
+         * This has to put the edited text together first, an editor that already has it should pass it to the other edit().
+         */
+        Snapshot edit(int offset, int removed, String inserted) {
+            checkEdit(offset, removed);
+            String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+            return edit(offset, removed, inserted.length(), edited);
+        }
+
+        /**
+         * The same, for a caller that already holds the `edited` text: this source with `removed` characters at `offset`
+         * replaced by `inserted` new ones.
+         */
+        Snapshot edit(int offset, int removed, int inserted, String edited) {
+            checkEdit(offset, removed);
+            if (inserted < 0 || edited.length() != source.length() - removed + inserted) {
+                throw new IllegalArgumentException("Edited text doesn't have " + source.length() + " - " + removed
+                    + " + " + inserted + " characters");
+            }
+            if (root == null) return parse(edited, null, 0, 1, Replay.NONE, null, 0, 0);
+
+            // the first statement the edit touches, the one before it as well in case the edit glued a token onto it,
+            // and every erroneous statement before those (a scan error or synchronize() can depend on what follows)
+            int touched = Math.min(firstEndingAt(root, offset), root.size - 1);
+            int damaged = Math.max(0, touched - 1);
+            while (damaged > 0 && locate(root, damaged - 1).unit.errors.length > 0) damaged--;
+
+            Located first = locate(root, damaged);
+            Replay replay = Replay.of(root, damaged, touched, first, offset);
+            return parse(edited, take(root, damaged), first.start, first.line, replay,
+                this, offset + inserted, inserted - removed);
+        }
+
+        private void checkEdit(int offset, int removed) {
+            if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+                throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " outside of " + source.length());
+            }
+        }
+    }
+
+    /**
+     * One top-level statement as it was parsed: its tree, errors and tokens carry the lines it had back then,
+     * its current line comes from where it sits in the tree. Shared by every snapshot that reuses it.
+     */
+    private static final class Unit {
+        // characters and line breaks from its start to the next statement's start
+        final int length;
+        final int newlines;
+        // the line it started on when it was parsed
+        final int parsedLine;
+        // null when the statement had a parse error, like Parser.parse() leaves it
+        final Stmt statement;
+        final Diagnostics.Diagnostic[] errors;
+        final boolean scanError;
+        // the tokens it was parsed from, with where each starts (offset and line) relative to the statement's start
+        final Token[] tokens;
+        final int[] tokenStarts;
+        final int[] tokenLines;
+        // the tree moved to the line last asked for
+        private Shifted shifted = null;
+
+        Unit(int length, int newlines, int parsedLine, Stmt statement, Diagnostics.Diagnostic[] errors,
+             Token[] tokens, int[] tokenStarts, int[] tokenLines) {
+            this.length = length;
+            this.newlines = newlines;
+            this.parsedLine = parsedLine;
+            this.statement = statement;
+            this.errors = errors;
+            this.tokens = tokens;
+            this.tokenStarts = tokenStarts;
+            this.tokenLines = tokenLines;
+
+            boolean scanError = false;
+            for (Diagnostics.Diagnostic error : errors) scanError |= error.token == null;
+            this.scanError = scanError;
+        }
+
+        // the tree as it reads when the statement starts on `line`
+        Stmt statement(int line) {
+            int lines = line - parsedLine;
+            if (lines == 0 || statement == null) return statement;
+
+            // one field, so a snapshot on another thread never sees a tree paired with the wrong line
+            Shifted cached = shifted;
+            if (cached == null || cached.lines != lines) {
+                cached = new Shifted(lines, shift(statement, lines));
+                shifted = cached;
+            }
+            return cached.statement;
+        }
+    }
+
+    private static final class Shifted {
+        final int lines;
+        final Stmt statement;
+
+        Shifted(int lines, Stmt statement) {
+            this.lines = lines;
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * A persistent tree of units in source order, kept balanced by random merges (a treap without stored priorities).
+     * Every node knows the totals of its subtree, so finding a statement by index or offset and splitting the tree
+     * only walks one path, and a new tree copies that path and shares the rest.
+     */
+    private static final class Node {
+        final Node left;
+        final Unit unit;
+        final Node right;
+        final int size;
+        final int length;
+        final int newlines;
+        final boolean hadError;
+
+        Node(Node left, Unit unit, Node right) {
+            this.left = left;
+            this.unit = unit;
+            this.right = right;
+            this.size = size(left) + 1 + size(right);
+            this.length = length(left) + unit.length + length(right);
+            this.newlines = newlines(left) + unit.newlines + newlines(right);
+            this.hadError = unit.errors.length > 0 || (left != null && left.hadError) || (right != null && right.hadError);
+        }
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int length(Node node) {
+        return node == null ? 0 : node.length;
+    }
+
+    private static int newlines(Node node) {
+        return node == null ? 0 : node.newlines;
+    }
+
+    // every unit of `left` followed by every unit of `right`, the root picked in proportion to the sizes
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (ThreadLocalRandom.current().nextInt(left.size + right.size) < left.size) {
+            return new Node(left.left, left.unit, merge(left.right, right));
+        }
+        return new Node(merge(left, right.left), right.unit, right.right);
+    }
+
+    // the first `count` units
+    private static Node take(Node node, int count) {
+        if (node == null || count <= 0) return null;
+        if (count >= node.size) return node;
+        int before = size(node.left);
+        if (count <= before) return take(node.left, count);
+        return new Node(node.left, node.unit, take(node.right, count - before - 1));
+    }
+
+    // all but the first `count` units
+    private static Node drop(Node node, int count) {
+        if (node == null || count <= 0) return node;
+        if (count >= node.size) return null;
+        int before = size(node.left);
+        if (count > before) return drop(node.right, count - before - 1);
+        return new Node(drop(node.left, count), node.unit, node.right);
+    }
+
+    // units [from, to) as a balanced tree
+    private static Node build(List<Unit> units, int from, int to) {
+        if (from >= to) return null;
+        int middle = (from + to) >>> 1;
+        return new Node(build(units, from, middle), units.get(middle), build(units, middle + 1, to));
+    }
+
+    // a unit with where it starts in the snapshot's source
+    private static final class Located {
+        final Unit unit;
+        final int start;
+        final int line;
+
+        Located(Unit unit, int start, int line) {
+            this.unit = unit;
+            this.start = start;
+            this.line = line;
+        }
+    }
+
+    private static Located locate(Node node, int index) {
+        int start = 0;
+        int line = 1;
+        for (;;) {
+            int before = size(node.left);
+            if (index < before) {
+                node = node.left;
+                continue;
+            }
+            start += length(node.left);
+            line += newlines(node.left);
+            if (index == before) return new Located(node.unit, start, line);
+
+            start += node.unit.length;
+            line += node.unit.newlines;
+            index -= before + 1;
+            node = node.right;
+        }
+    }
+
+    // the index of the first unit that ends at or after `offset`, or the number of units if none does
+    private static int firstEndingAt(Node node, int offset) {
+        int index = 0;
+        int start = 0;
+        while (node != null) {
+            int end = start + length(node.left);
+            if (node.left != null && end >= offset) {
+                node = node.left;
+                continue;
+            }
+            if (end + node.unit.length >= offset) return index + size(node.left);
+
+            start = end + node.unit.length;
+            index += size(node.left) + 1;
+            node = node.right;
+        }
+        return index;
+    }
+
+    // the index of the unit that starts exactly at `offset`, or -1
+    private static int startingAt(Node node, int offset) {
+        int index = 0;
+        int start = 0;
+        while (node != null) {
+            int here = start + length(node.left);
+            if (offset < here) {
+                node = node.left;
+            } else if (offset == here) {
+                return index + size(node.left);
+            } else {
+                start = here + node.unit.length;
+                index += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    // returns the line after the subtree
+    private static int addStatements(Node node, int line, List<Stmt> statements) {
+        if (node == null) return line;
+        line = addStatements(node.left, line, statements);
+        statements.add(node.unit.statement(line));
+        return addStatements(node.right, line + node.unit.newlines, statements);
+    }
+
+    // the same, only going into the subtrees that have errors
+    private static int addErrors(Node node, int line, List<Diagnostics.Diagnostic> errors) {
+        if (node == null) return line;
+        if (!node.hadError) return line + node.newlines;
+
+        line = addErrors(node.left, line, errors);
+        int lines = line - node.unit.parsedLine;
+        for (Diagnostics.Diagnostic error : node.unit.errors) errors.add(lines == 0 ? error : shift(error, lines));
+        return addErrors(node.right, line + node.unit.newlines, errors);
+    }
+
+    /**
+     * The tokens an edit doesn't have to scan again: the damaged statements' tokens from the first one on,
+     * up to the last one the edit can't have changed. A token ending two characters before the edit is safe,
+     * the scanner never looks further than one character past a token (`1.` followed by a digit).
+     * It stops at a statement with a scan error, the replay wouldn't report it.
+     */
+    private static final class Replay {
+        static final Replay NONE = new Replay(new Token[0], new int[0], new int[0], 0);
+
+        final Token[] tokens;
+        final int[] starts;
+        final int[] lines;
+        final int count;
+
+        private Replay(Token[] tokens, int[] starts, int[] lines, int count) {
+            this.tokens = tokens;
+            this.starts = starts;
+            this.lines = lines;
+            this.count = count;
+        }
+
+        static Replay of(Node root, int from, int to, Located first, int offset) {
+            List<Token> tokens = new ArrayList<>();
+            int[] starts = new int[16];
+            int[] lines = new int[16];
+
+            Located unit = first;
+            for (int i = from; i <= to; i++) {
+                if (i > from) unit = locate(root, i);
+                if (unit.unit.scanError) break;
+
+                int shift = unit.line - unit.unit.parsedLine;
+                Token[] unitTokens = unit.unit.tokens;
+                for (int t = 0; t < unitTokens.length; t++) {
+                    int start = unit.start + unit.unit.tokenStarts[t];
+                    if (start + unitTokens[t].lexeme.length() + 2 > offset) {
+                        return new Replay(tokens.toArray(new Token[0]), starts, lines, tokens.size());
+                    }
+
+                    if (tokens.size() == starts.length) {
+                        starts = Arrays.copyOf(starts, starts.length * 2);
+                        lines = Arrays.copyOf(lines, lines.length * 2);
+                    }
+                    starts[tokens.size()] = start;
+                    lines[tokens.size()] = unit.line + unit.unit.tokenLines[t];
+                    tokens.add(shift == 0 ? unitTokens[t] : shift(unitTokens[t], shift));
+                }
+            }
+            return new Replay(tokens.toArray(new Token[0]), starts, lines, tokens.size());
+        }
+
+        // where the scanner picks up after the replayed tokens
+        int resumeAt(int start) {
+            return count == 0 ? start : starts[count - 1] + tokens[count - 1].lexeme.length();
+        }
+
+        // the line it's on there, a token's line is the line it ends on
+        int resumeLine(int line) {
+            return count == 0 ? line : tokens[count - 1].line;
+        }
+    }
+
+    // the tokens the parser pulled for the statement it's on, with where each starts
+    private static final class Pulled {
+        Token[] tokens = new Token[16];
+        int[] starts = new int[16];
+        int[] lines = new int[16];
+        int count = 0;
+
+        void add(Token token, int start, int line) {
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            tokens[count] = token;
+            starts[count] = start;
+            lines[count] = line;
+            count++;
+        }
+
+        // the statement starting at `start` on `line` is done: everything but the last token (the parser's lookahead,
+        // the next statement's first token) is its, and stays behind for the next one
+        Unit finish(int start, int line, int end, int endLine, Stmt statement, Diagnostics.Diagnostic[] errors) {
+            int own = count - 1;
+            int[] tokenStarts = new int[own];
+            int[] tokenLines = new int[own];
+            for (int i = 0; i < own; i++) {
+                tokenStarts[i] = starts[i] - start;
+                tokenLines[i] = lines[i] - line;
+            }
+            Unit unit = new Unit(end - start, endLine - line, line, statement, errors,
+                Arrays.copyOf(tokens, own), tokenStarts, tokenLines);
+
+            tokens[0] = tokens[own];
+            starts[0] = starts[own];
+            lines[0] = lines[own];
+            Arrays.fill(tokens, 1, count, null);
+            count = 1;
+            return unit;
+        }
+    }
+
+    static Snapshot parse(String source) {
+        return parse(source, null, 0, 1, Replay.NONE, null, 0, 0);
+    }
+
+    /**
+     * Parses `source` from `start` (on `line`) onward, after the `kept` statements, the first tokens coming from `replay`.
+     * With an `old` snapshot, it stops as soon as it's at the start of an old statement past `editEnd`
+     * (where the edit's new text ends) and takes the rest from there, `delta` characters further along.
+     */
+    private static Snapshot parse(String source, Node kept, int start, int line, Replay replay,
+                                  Snapshot old, int editEnd, int delta) {
+        Diagnostics diagnostics = new Diagnostics();
+        Scanner scanner = new Scanner(source, replay.resumeAt(start), replay.resumeLine(line), diagnostics);
+
+        Pulled pulled = new Pulled();
+        int[] replayed = {0};
+        TokenSource tokens = () -> {
+            if (replayed[0] < replay.count) {
+                int i = replayed[0]++;
+                pulled.add(replay.tokens[i], replay.starts[i], replay.lines[i]);
+                return replay.tokens[i];
+            }
+            Token token = scanner.nextToken();
+            pulled.add(token, scanner.tokenStart(), scanner.tokenLine());
+            return token;
+        };
+        Parser parser = new Parser(tokens, diagnostics);
+
+        List<Unit> units = new ArrayList<>();
+        int reported = 0;
+        while (!parser.atEnd()) {
+            Stmt statement = parser.nextDeclaration();
+            List<Diagnostics.Diagnostic> reportedErrors = diagnostics.errors();
+            Diagnostics.Diagnostic[] statementErrors = reportedErrors.size() == reported
+                ? NO_ERRORS
+                : reportedErrors.subList(reported, reportedErrors.size()).toArray(NO_ERRORS);
+            reported = reportedErrors.size();
+
+            // the lookahead is where this statement ends and the next one starts
+            int next = pulled.starts[pulled.count - 1];
+            int nextLine = pulled.lines[pulled.count - 1];
+            units.add(pulled.finish(start, line, next, nextLine, statement, statementErrors));
+            start = next;
+            line = nextLine;
+
+            if (old != null && start >= editEnd) {
+                int resumed = startingAt(old.root, start - delta);
+                if (resumed >= 0) {
+                    Node reparsed = build(units, 0, units.size());
+                    Node root = merge(merge(kept, reparsed), drop(old.root, resumed));
+                    return new Snapshot(source, root, NO_ERRORS, units.size());
+                }
+            }
+        }
+
+        Node root = merge(kept, build(units, 0, units.size()));
+        // only a source without any statement can have errors left over, nothing was there to take them
+        Diagnostics.Diagnostic[] loose = root == null ? diagnostics.errors().toArray(NO_ERRORS) : NO_ERRORS;
+        return new Snapshot(source, root, loose, units.size());
+    }
+
+    private static Diagnostics.Diagnostic shift(Diagnostics.Diagnostic error, int lines) {
+        Token token = error.token == null ? null : shift(error.token, lines);
+        return new Diagnostics.Diagnostic(token, error.line + lines, error.message);
+    }
+
+    private static Stmt shift(Stmt stmt, int lines) {
+        if (stmt == null) return null;
+        if (stmt instanceof Stmt.Block) {
+            List<Stmt> statements = new ArrayList<>();
+            for (Stmt statement : ((Stmt.Block) stmt).statements) statements.add(shift(statement, lines));
+            return new Stmt.Block(statements);
+        }
+        if (stmt instanceof Stmt.Expression) return new Stmt.Expression(shift(((Stmt.Expression) stmt).expression, lines));
+        if (stmt instanceof Stmt.Print) return new Stmt.Print(shift(((Stmt.Print) stmt).expression, lines));
+        if (stmt instanceof Stmt.Var) {
+            Stmt.Var var = (Stmt.Var) stmt;
+            return new Stmt.Var(shift(var.name, lines), shift(var.initializer, lines));
+        }
+        throw new IllegalArgumentException("Can't move " + stmt.getClass().getName());
+    }
+
+    private static Expr shift(Expr expr, int lines) {
+        if (expr == null) return null;
+        if (expr instanceof Expr.Assign) {
+            Expr.Assign assign = (Expr.Assign) expr;
+            return new Expr.Assign(shift(assign.name, lines), shift(assign.value, lines));
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            return new Expr.Binary(shift(binary.left, lines), shift(binary.operator, lines), shift(binary.right, lines));
+        }
+        if (expr instanceof Expr.Grouping) return new Expr.Grouping(shift(((Expr.Grouping) expr).expression, lines));
+        if (expr instanceof Expr.Literal) return expr;
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            return new Expr.Unary(shift(unary.operator, lines), shift(unary.right, lines));
+        }
+        if (expr instanceof Expr.Variable) return new Expr.Variable(shift(((Expr.Variable) expr).name, lines));
+        throw new IllegalArgumentException("Can't move " + expr.getClass().getName());
+    }
+
+    private static Token shift(Token token, int lines) {
+        return new Token(token.type, token.lexeme, token.literal, token.line + lines);
+    }
+}
@@ -0,0 +1,435 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the (already resolved) syntax tree into JVM classes that JvmRuntime loads and runs,
+ * so the script itself becomes Java bytecode that HotSpot can JIT like any other method.
+ *
+ * The mapping is direct: every Lox value is an Object on the JVM operand stack, every operator is a call to a
+ * static JvmRuntime method, globals go through the runtime's array and locals are JVM local variables
+ * (laid out flat like in Compiler, a (depth, slot) pair becomes bases[depth levels up] + slot).
+ * Since Lox has no control flow yet, the generated code never branches.
+ *
+ * A method can't hold more than 64KB of code and a class more than 64K constants, so top-level statements are
+ * packed into as many `chunkN` methods as they need, and into as many classes as those need.
+ * Each class implements JvmRuntime.Script and its run() calls its chunks in order.
+ */
+class JvmCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final String RUNTIME = "com/craftinginterpreters/lox/JvmRuntime";
+    private static final String SCRIPT = RUNTIME + "$Script";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String RUN_DESCRIPTOR = "(L" + RUNTIME + ";)Ljava/lang/Object;";
+    private static final String CHUNK_DESCRIPTOR = "(L" + RUNTIME + ";)V";
+    private static final String BINARY_DESCRIPTOR = "(Ljava/lang/Object;Ljava/lang/Object;I)Ljava/lang/Object;";
+
+    // leaves room under the real limits for the statement that crosses them
+    private static final int MAX_CHUNK_CODE = 60000;
+    private static final int MAX_CLASS_CONSTANTS = 60000;
+    // a Utf8 constant is at most 64KB of modified UTF-8 (up to 3 bytes a char), longer strings are split
+    private static final int MAX_STRING_PIECE = 16000;
+
+    private final List<byte[]> classes = new ArrayList<>();
+    private ClassFileWriter writer = null;
+    private int chunkCount = 0;
+
+    // the chunk method being filled
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+    private int chunkMaxStack = 0;
+    private int chunkMaxLocals = 1;
+
+    // the statement being compiled
+    private ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private int stackDepth = 0;
+    private int maxStack = 0;
+    private int maxLocals = 1;
+
+    // local 0 is the JvmRuntime, Lox locals start at 1
+    private final List<Integer> bases = new ArrayList<>();
+    private int nextLocal = 1;
+
+    // the line of the last token we saw, for compile errors
+    private int line = 1;
+
+    List<byte[]> compile(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (writer == null) startClass();
+
+            code = new ByteArrayOutputStream();
+            stackDepth = 0;
+            maxStack = 0;
+            maxLocals = 1;
+            statement.accept(this);
+
+            if (code.size() > MAX_CHUNK_CODE) {
+                Lox.error(line, "Statement too large to compile to JVM bytecode.");
+                continue;
+            }
+
+            if (chunk.size() + code.size() > MAX_CHUNK_CODE) finishChunk();
+            chunk.writeBytes(code.toByteArray());
+            chunkMaxStack = Math.max(chunkMaxStack, maxStack);
+            chunkMaxLocals = Math.max(chunkMaxLocals, maxLocals);
+
+            if (writer.constantCount() > ClassFileWriter.MAX_CONSTANTS) {
+                Lox.error(line, "Too many constants in one statement to compile to JVM bytecode.");
+                return classes;
+            }
+            if (writer.constantCount() > MAX_CLASS_CONSTANTS) finishClass();
+        }
+
+        if (writer != null) finishClass();
+        return classes;
+    }
+
+    // the REPL echoes bare expressions, so the class's run() hands back the value
+    List<byte[]> compileExpression(Expr expression) {
+        startClass();
+        expression.accept(this);
+        emit(0xb0, -1); // areturn
+
+        if (code.size() > MAX_CHUNK_CODE || writer.constantCount() > ClassFileWriter.MAX_CONSTANTS) {
+            Lox.error(line, "Expression too large to compile to JVM bytecode.");
+            return classes;
+        }
+        writer.method(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, "value", RUN_DESCRIPTOR,
+            maxStack, maxLocals, code.toByteArray());
+
+        code = new ByteArrayOutputStream();
+        emit(0x2b, 1); // aload_1, the runtime
+        invoke(0xb8, writer.methodRef(className(), "value", RUN_DESCRIPTOR), 0);
+        emit(0xb0, -1); // areturn
+        writer.method(ClassFileWriter.ACC_PUBLIC, "run", RUN_DESCRIPTOR, 2, 2, code.toByteArray());
+
+        classes.add(writer.toByteArray());
+        return classes;
+    }
+
+    private String className() {
+        return "com/craftinginterpreters/lox/generated/Script" + classes.size();
+    }
+
+    private void startClass() {
+        writer = new ClassFileWriter(className(), OBJECT, SCRIPT);
+        chunkCount = 0;
+
+        // the constructor, which only calls Object's
+        code = new ByteArrayOutputStream();
+        emit(0x2a, 1); // aload_0
+        invoke(0xb7, writer.methodRef(OBJECT, "<init>", "()V"), -1);
+        emit(0xb1, 0); // return
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1, 1, code.toByteArray());
+        code = new ByteArrayOutputStream();
+        stackDepth = 0;
+        maxStack = 0;
+        maxLocals = 1;
+    }
+
+    private void finishChunk() {
+        if (chunk.size() == 0) return;
+
+        chunk.write(0xb1); // return
+        writer.method(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, "chunk" + chunkCount, CHUNK_DESCRIPTOR,
+            chunkMaxStack, chunkMaxLocals, chunk.toByteArray());
+        chunkCount++;
+
+        chunk.reset();
+        chunkMaxStack = 0;
+        chunkMaxLocals = 1;
+    }
+
+    private void finishClass() {
+        finishChunk();
+
+        code = new ByteArrayOutputStream();
+        for (int i = 0; i < chunkCount; i++) {
+            emit(0x2b, 1); // aload_1, the runtime
+            invoke(0xb8, writer.methodRef(className(), "chunk" + i, CHUNK_DESCRIPTOR), -1);
+        }
+        emit(0x01, 1); // aconst_null
+        emit(0xb0, -1); // areturn
+        writer.method(ClassFileWriter.ACC_PUBLIC, "run", RUN_DESCRIPTOR, 1, 2, code.toByteArray());
+
+        classes.add(writer.toByteArray());
+        writer = null;
+    }
+
+    // writes an instruction and keeps track of how deep the operand stack gets
+    private void emit(int opcode, int stackChange) {
+        code.write(opcode);
+        stackDepth += stackChange;
+        if (stackDepth > maxStack) maxStack = stackDepth;
+    }
+
+    private void u1(int value) {
+        code.write(value);
+    }
+
+    private void u2(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private void invoke(int opcode, int method, int stackChange) {
+        emit(opcode, stackChange);
+        u2(method);
+    }
+
+    private void invokeRuntime(String name, String descriptor, int stackChange) {
+        invoke(0xb8, writer.methodRef(RUNTIME, name, descriptor), stackChange);
+    }
+
+    private void invokeVirtual(String name, String descriptor, int stackChange) {
+        invoke(0xb6, writer.methodRef(RUNTIME, name, descriptor), stackChange);
+    }
+
+    private void loadRuntime() {
+        emit(0x2a, 1); // aload_0
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            emit(0x03 + value, 1); // iconst_<n>
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emit(0x10, 1); // bipush
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emit(0x11, 1); // sipush
+            u2(value);
+        } else {
+            ldc(writer.integer(value));
+        }
+    }
+
+    private void ldc(int index) {
+        if (index <= 0xff) {
+            emit(0x12, 1); // ldc
+            u1(index);
+        } else {
+            emit(0x13, 1); // ldc_w
+            u2(index);
+        }
+    }
+
+    private void pushString(String text) {
+        if (text.length() <= MAX_STRING_PIECE) {
+            ldc(writer.string(text));
+            return;
+        }
+
+        // glued back together with String.concat when it runs
+        ldc(writer.string(text.substring(0, MAX_STRING_PIECE)));
+        for (int start = MAX_STRING_PIECE; start < text.length(); start += MAX_STRING_PIECE) {
+            ldc(writer.string(text.substring(start, Math.min(start + MAX_STRING_PIECE, text.length()))));
+            invoke(0xb6, writer.methodRef("java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;"), -1);
+        }
+    }
+
+    private void load(int local) {
+        if (local <= 3) {
+            emit(0x2a + local, 1); // aload_<n>
+        } else if (local <= 0xff) {
+            emit(0x19, 1); // aload
+            u1(local);
+        } else {
+            emit(0xc4, 0); // wide
+            emit(0x19, 1);
+            u2(local);
+        }
+    }
+
+    private void store(int local) {
+        if (local <= 3) {
+            emit(0x4b + local, -1); // astore_<n>
+        } else if (local <= 0xff) {
+            emit(0x3a, -1); // astore
+            u1(local);
+        } else {
+            emit(0xc4, 0); // wide
+            emit(0x3a, -1);
+            u2(local);
+        }
+    }
+
+    private int local(int depth, int slot) {
+        int index = bases.get(bases.size() - 1 - depth) + slot;
+        if (index >= 0xffff) {
+            Lox.error(line, "Too many local variables.");
+            return 1;
+        }
+        return index;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        int base = nextLocal;
+        bases.add(base);
+        nextLocal += stmt.slotCount;
+        if (nextLocal > maxLocals) maxLocals = nextLocal;
+
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+
+        // the next sibling block can reuse these locals
+        bases.remove(bases.size() - 1);
+        nextLocal = base;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        emit(0x57, -1); // pop
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        loadRuntime();
+        stmt.expression.accept(this);
+        invokeVirtual("print", "(Ljava/lang/Object;)V", -2);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+
+        // outside of any block it's a global and its slot is the symbol id
+        boolean global = bases.isEmpty();
+        if (global) loadRuntime();
+
+        if (stmt.initializer != null) {
+            stmt.initializer.accept(this);
+        } else {
+            emit(0xb2, 1); // getstatic
+            u2(writer.fieldRef(RUNTIME, "UNINITIALIZED", "Ljava/lang/Object;"));
+        }
+
+        if (global) {
+            pushInt(stmt.slot);
+            invokeVirtual("defineGlobal", "(Ljava/lang/Object;I)V", -3);
+        } else {
+            store(local(0, stmt.slot));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth != -1) {
+            expr.value.accept(this);
+            line = expr.name.line;
+            // assignment is an expression, so a copy of the value stays on the stack
+            emit(0x59, 1); // dup
+            store(local(expr.depth, expr.slot));
+        } else {
+            loadRuntime();
+            expr.value.accept(this);
+            line = expr.name.line;
+            pushInt(expr.slot);
+            pushInt(line);
+            invokeVirtual("assignGlobal", "(Ljava/lang/Object;II)Ljava/lang/Object;", -3);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expr.left.accept(this);
+
+        String operator;
+        switch (expr.operator.type) {
+            case GREATER: operator = "greater"; break;
+            case GREATER_EQUAL: operator = "greaterEqual"; break;
+            case LESS: operator = "less"; break;
+            case LESS_EQUAL: operator = "lessEqual"; break;
+            case MINUS: operator = "subtract"; break;
+            case PLUS: operator = "add"; break;
+            case SLASH: operator = "divide"; break;
+            case STAR: operator = "multiply"; break;
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                expr.right.accept(this);
+                line = expr.operator.line;
+                invokeRuntime(expr.operator.type == TokenType.EQUAL_EQUAL ? "equal" : "notEqual",
+                    "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", -1);
+                return null;
+            default:
+                // the comma operator (and anything else the Interpreter doesn't handle) evaluates both sides and gives nil
+                emit(0x57, -1); // pop
+                expr.right.accept(this);
+                emit(0x57, -1); // pop
+                emit(0x01, 1); // aconst_null
+                return null;
+        }
+
+        expr.right.accept(this);
+        line = expr.operator.line;
+        pushInt(line);
+        invokeRuntime(operator, BINARY_DESCRIPTOR, -2);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value == null) {
+            emit(0x01, 1); // aconst_null
+        } else if (value instanceof Boolean) {
+            emit(0xb2, 1); // getstatic
+            u2(writer.fieldRef("java/lang/Boolean", (Boolean) value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;"));
+        } else if (value instanceof Double) {
+            emit(0x14, 2); // ldc2_w
+            u2(writer.doubleConstant((Double) value));
+            invoke(0xb8, writer.methodRef("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"), -1);
+        } else {
+            pushString((String) value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expr.right.accept(this);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case MINUS:
+                pushInt(line);
+                invokeRuntime("negate", "(Ljava/lang/Object;I)Ljava/lang/Object;", -1);
+                break;
+            case BANG:
+                invokeRuntime("not", "(Ljava/lang/Object;)Ljava/lang/Object;", 0);
+                break;
+            default: break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        if (expr.depth != -1) {
+            load(local(expr.depth, expr.slot));
+            pushString(expr.name.lexeme);
+            pushInt(line);
+            invokeRuntime("local", "(Ljava/lang/Object;Ljava/lang/String;I)Ljava/lang/Object;", -2);
+        } else {
+            loadRuntime();
+            pushInt(expr.slot);
+            pushInt(line);
+            invokeVirtual("getGlobal", "(II)Ljava/lang/Object;", -2);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,213 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What the classes JvmCompiler generates run against: the globals, the output sink, and one small static method per operator.
+ * It is the third engine next to the Interpreter and the VM and has to behave exactly like them,
+ * so the operators reuse the Interpreter's isEqual/isTruthy/stringify and the same error messages.
+ *
+ * The generated classes live in their own class loader, which makes them a different runtime package,
+ * so everything they touch here has to be public (and can only take plain Java types, Token isn't public).
+ * The operators are tiny and static, so once a script is hot the JIT inlines them straight into the script's code.
+ *
+ * Like the interpreter in Lox, one JvmRuntime is kept for the whole REPL session so globals survive between lines.
+ */
+public final class JvmRuntime {
+    /** What every generated class implements. */
+    public interface Script {
+        Object run(JvmRuntime runtime);
+    }
+
+    public static final Object UNINITIALIZED = Environment.UNINITIALIZED;
+
+    // marks a global slot that was never defined with `var`
+    private static final Object UNDEFINED = new Object() {
+        @Override
+        public String toString() {
+            return "UNDEFINED";
+        }
+    };
+
+    // globals are indexed by the symbol id the Resolver gave their name, like in the Interpreter's global Environment
+    final SymbolTable symbols;
+    private Object[] globals = new Object[64];
+    // where `print` goes
+    private final OutputSink out;
+
+    JvmRuntime() {
+        this(new SymbolTable());
+    }
+
+    JvmRuntime(SymbolTable symbols) {
+        this(symbols, OutputSink.STDOUT);
+    }
+
+    JvmRuntime(SymbolTable symbols, OutputSink out) {
+        this.symbols = symbols;
+        this.out = out;
+        Arrays.fill(globals, UNDEFINED);
+    }
+
+    /**
+     * Defines the generated classes, each in a fresh loader so they can be unloaded once nothing runs them anymore.
+     */
+    static List<Script> load(List<byte[]> classes) {
+        ScriptLoader loader = new ScriptLoader();
+        List<Script> scripts = new ArrayList<>();
+        for (byte[] bytes : classes) {
+            try {
+                scripts.add((Script) loader.define(bytes).getDeclaredConstructor().newInstance());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Couldn't load a compiled script", e);
+            }
+        }
+        return scripts;
+    }
+
+    private static final class ScriptLoader extends ClassLoader {
+        ScriptLoader() {
+            super(JvmRuntime.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+
+    void interpret(List<Script> scripts) {
+        try {
+            run(scripts);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    // the value of the last script, which is the value of the expression for compileExpression() output
+    Object run(List<Script> scripts) {
+        Object result = null;
+        for (Script script : scripts) {
+            result = script.run(this);
+        }
+        return result;
+    }
+
+    public Object getGlobal(int symbol, int line) {
+        Object value = symbol < globals.length ? globals[symbol] : UNDEFINED;
+        if (value == UNDEFINED) {
+            throw error(line, "Undefined variable '" + symbols.name(symbol) + "'.");
+        }
+        if (value == UNINITIALIZED) {
+            throw error(line, "Variable '" + symbols.name(symbol) + "' used before initialization.");
+        }
+        return value;
+    }
+
+    // assignment is an expression, so this hands the value back
+    public Object assignGlobal(Object value, int symbol, int line) {
+        if (symbol >= globals.length || globals[symbol] == UNDEFINED) {
+            throw error(line, "Undefined variable '" + symbols.name(symbol) + "'.");
+        }
+        globals[symbol] = value;
+        return value;
+    }
+
+    // the REPL can keep defining new globals, so the array grows to fit
+    public void defineGlobal(Object value, int symbol) {
+        if (symbol >= globals.length) {
+            int size = globals.length;
+            globals = Arrays.copyOf(globals, Math.max(size * 2, symbol + 1));
+            Arrays.fill(globals, size, globals.length, UNDEFINED);
+        }
+        globals[symbol] = value;
+    }
+
+    // locals live in JVM local variables, this is the check that happens when one is read
+    public static Object local(Object value, String name, int line) {
+        if (value == UNINITIALIZED) {
+            throw error(line, "Variable '" + name + "' used before initialization.");
+        }
+        return value;
+    }
+
+    public void print(Object value) {
+        Interpreter.print(out, value);
+    }
+
+    public static Object negate(Object operand, int line) {
+        if (!(operand instanceof Double)) {
+            throw error(line, "Operand must be a number.");
+        }
+        return -(double) operand;
+    }
+
+    public static Object not(Object operand) {
+        return !Interpreter.isTruthy(operand);
+    }
+
+    public static Object equal(Object a, Object b) {
+        return Interpreter.isEqual(a, b);
+    }
+
+    public static Object notEqual(Object a, Object b) {
+        return !Interpreter.isEqual(a, b);
+    }
+
+    public static Object greater(Object a, Object b, int line) {
+        checkNumberOperands(a, b, line);
+        return (double) a > (double) b;
+    }
+
+    public static Object greaterEqual(Object a, Object b, int line) {
+        checkNumberOperands(a, b, line);
+        return (double) a >= (double) b;
+    }
+
+    public static Object less(Object a, Object b, int line) {
+        checkNumberOperands(a, b, line);
+        return (double) a < (double) b;
+    }
+
+    public static Object lessEqual(Object a, Object b, int line) {
+        checkNumberOperands(a, b, line);
+        return (double) a <= (double) b;
+    }
+
+    public static Object add(Object a, Object b, int line) {
+        if (a instanceof Double && b instanceof Double) {
+            return (double) a + (double) b;
+        }
+        if (Rope.isString(a) && Rope.isString(b)) {
+            return Rope.concat(a, b);
+        }
+        throw error(line, "Operands must be two numbers or two strings.");
+    }
+
+    public static Object subtract(Object a, Object b, int line) {
+        checkNumberOperands(a, b, line);
+        return (double) a - (double) b;
+    }
+
+    public static Object multiply(Object a, Object b, int line) {
+        checkNumberOperands(a, b, line);
+        return (double) a * (double) b;
+    }
+
+    public static Object divide(Object a, Object b, int line) {
+        checkNumberOperands(a, b, line);
+        return (double) a / (double) b;
+    }
+
+    private static void checkNumberOperands(Object a, Object b, int line) {
+        if (a instanceof Double && b instanceof Double) return;
+
+        throw error(line, "Operands must be numbers.");
+    }
+
+    // like the VM, only the line survives compilation, which is all Lox.runtimeError() reports anyway
+    private static RuntimeError error(int line, String message) {
+        return new RuntimeError(new Token(TokenType.EOF, "", null, line), message);
+    }
+}
@@ -0,0 +1,85 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * The reserved words, as a trie every scanner walks over the lexeme in place: no substring, no hashing,
+ * and an identifier is usually given up on after its first character or two.
+ */
+final class Keywords {
+    private Keywords() {}
+
+    /**
+     * Node 0 is the root, TRIE[node * 26 + (c - 'a')] is the child for letter c (0 = none)
+     * and TRIE_KEYWORD[node] is the keyword that ends at that node, if any. Keywords are all lowercase,
+     * so any other character means "not a keyword".
+     */
+    private static final int[] TRIE;
+    private static final TokenType[] TRIE_KEYWORD;
+
+    static {
+        String[] words = {
+            "and", "class", "else", "false", "for", "fun", "if", "nil", "or",
+            "print", "return", "super", "this", "true", "var", "while"
+        };
+        TokenType[] types = {
+            AND, CLASS, ELSE, FALSE, FOR, FUN, IF, NIL, OR,
+            PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE
+        };
+
+        List<int[]> nodes = new ArrayList<>();
+        List<TokenType> keywords = new ArrayList<>();
+        nodes.add(new int[26]);
+        keywords.add(null);
+
+        for (int i = 0; i < words.length; i++) {
+            int node = 0;
+            for (char c : words[i].toCharArray()) {
+                int child = nodes.get(node)[c - 'a'];
+                if (child == 0) {
+                    child = nodes.size();
+                    nodes.add(new int[26]);
+                    keywords.add(null);
+                    nodes.get(node)[c - 'a'] = child;
+                }
+                node = child;
+            }
+            keywords.set(node, types[i]);
+        }
+
+        TRIE = new int[nodes.size() * 26];
+        for (int i = 0; i < nodes.size(); i++) {
+            System.arraycopy(nodes.get(i), 0, TRIE, i * 26, 26);
+        }
+        TRIE_KEYWORD = keywords.toArray(new TokenType[0]);
+    }
+
+    // the keyword text[start, end) spells, or null if it's just an identifier
+    static TokenType lookup(CharSequence text, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            node = child(node, text.charAt(i));
+            if (node == 0) return null;
+        }
+        return TRIE_KEYWORD[node];
+    }
+
+    // the same over the UTF-8 bytes Utf8Scanner reads, keywords are ASCII so one byte is one letter
+    static TokenType lookup(ByteBuffer bytes, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            node = child(node, bytes.get(i) & 0xff);
+            if (node == 0) return null;
+        }
+        return TRIE_KEYWORD[node];
+    }
+
+    private static int child(int node, int c) {
+        if (c < 'a' || c > 'z') return 0;
+        return TRIE[node * 26 + (c - 'a')];
+    }
+}
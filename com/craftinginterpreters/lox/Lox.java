@@ -3,41 +3,321 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 public class Lox {
 
 
   /** We make the field static so that successive calls to run() inside a REPL session reuse the same interpreter. Necessary for global variables in a REPL session */
-  private static final Interpreter interpreter = new Interpreter();
+  private static Interpreter interpreter;
+  // the bytecode engine, picked with --engine=vm. Kept around for the same reason as the interpreter
+  private static VM vm;
+  // the JVM bytecode engine, picked with --engine=jvm
+  private static JvmRuntime jvm;
+  // the tree-walker on NaN-boxed values, picked with --engine=nanbox
+  private static NanBoxInterpreter nanbox;
+
+  // where `print` goes. Buffered: the REPL flushes every line, scripts flush by size (or --flush=line|size|exit)
+  // and at exit. --async-output hands the writing to a background thread instead
+  private static OutputSink out;
+  private static BufferedOutput.FlushPolicy flushPolicy = null;
+  private static boolean asyncOutput = false;
+
+  private enum Engine { TREE, VM, JVM, NANBOX }
+  private static Engine engine = Engine.TREE;
+  // --verbose prints what the compile passes did (e.g. how many nodes constant folding removed) to stderr
+  private static boolean verbose = false;
+  // --mmap scans script files straight from a memory-mapped view of the file's UTF-8 bytes
+  private static boolean mapFiles = false;
+  // --scanner=dfa uses the table-driven DfaScanner instead of Scanner
+  private static boolean useDfa = false;
+  // --cache[=dir] keeps parsed scripts on disk, keyed by a hash of their source
+  private static AstCache cache = null;
+  // --profile runs the tree-walker under ProfilingInterpreter and prints the hot spots to stderr at the end
+  private static boolean profile = false;
+  // --metrics=json prints phase times, allocations and counts as one line of JSON to stderr at the end
+  private static Metrics metrics = null;
+  // --load=<file> defines the globals saved in a snapshot (see GlobalSnapshot) before anything runs
+  private static Path snapshot = null;
+
+  private static final String USAGE = "Usage: jlox [--engine=tree|vm|jvm|nanbox] [--scanner=switch|dfa] [--mmap]"
+      + " [--cache[=dir]] [--load=file] [--flush=line|size|exit] [--async-output] [--profile] [--metrics=json]"
+      + " [--verbose] [script|directory ...]";
 
   static boolean hadError = false;
   static boolean hadRuntimeError = false;
   private static boolean isReplMode = false;
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64); 
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    List<String> scripts = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.equals("--engine=vm")) {
+        engine = Engine.VM;
+      } else if (arg.equals("--engine=jvm")) {
+        engine = Engine.JVM;
+      } else if (arg.equals("--engine=nanbox")) {
+        engine = Engine.NANBOX;
+      } else if (arg.equals("--engine=tree")) {
+        engine = Engine.TREE;
+      } else if (arg.equals("--verbose")) {
+        verbose = true;
+      } else if (arg.equals("--mmap")) {
+        mapFiles = true;
+      } else if (arg.equals("--scanner=dfa")) {
+        useDfa = true;
+      } else if (arg.equals("--scanner=switch")) {
+        useDfa = false;
+      } else if (arg.equals("--flush=line")) {
+        flushPolicy = BufferedOutput.FlushPolicy.LINE;
+      } else if (arg.equals("--flush=size")) {
+        flushPolicy = BufferedOutput.FlushPolicy.SIZE;
+      } else if (arg.equals("--flush=exit")) {
+        flushPolicy = BufferedOutput.FlushPolicy.EXIT;
+      } else if (arg.equals("--async-output")) {
+        asyncOutput = true;
+      } else if (arg.equals("--profile")) {
+        profile = true;
+      } else if (arg.equals("--metrics=json")) {
+        metrics = new Metrics();
+      } else if (arg.startsWith("--load=")) {
+        snapshot = Paths.get(arg.substring("--load=".length()));
+      } else if (arg.equals("--cache")) {
+        cache = new AstCache(Paths.get(".loxcache"));
+      } else if (arg.startsWith("--cache=")) {
+        cache = new AstCache(Paths.get(arg.substring("--cache=".length())));
+      } else if (arg.startsWith("--")) {
+        // a mistyped flag would otherwise be taken for a script
+        System.out.println(USAGE);
+        System.exit(64);
+      } else {
+        scripts.add(arg);
+      }
+    }
+
+    if (asyncOutput) {
+      out = new AsyncOutput(System.out);
+    } else if (flushPolicy != null) {
+      out = new BufferedOutput(System.out, flushPolicy);
     } else {
+      out = new BufferedOutput(System.out, scripts.isEmpty() ? BufferedOutput.FlushPolicy.LINE : BufferedOutput.FlushPolicy.SIZE);
+    }
+    // whatever is still buffered goes out however we exit (System.exit included)
+    Runtime.getRuntime().addShutdownHook(new Thread(out::flush));
+
+    if (profile && engine != Engine.TREE) {
+      System.err.println("[profile] only --engine=tree can be profiled, running without it");
+      profile = false;
+    }
+    // only the engine that runs is built, the others stay null
+    switch (engine) {
+      case VM: vm = new VM(new SymbolTable(), out); break;
+      case JVM: jvm = new JvmRuntime(new SymbolTable(), out); break;
+      case NANBOX: nanbox = new NanBoxInterpreter(new SymbolTable(), out); break;
+      // the plain interpreter unless we're profiling, so there's nothing to pay for it otherwise
+      default: interpreter = profile ? new ProfilingInterpreter(new SymbolTable(), out) : new Interpreter(new SymbolTable(), out); break;
+    }
+
+    if (snapshot != null) {
+      if (engine != Engine.TREE) {
+        System.err.println("Global snapshots need --engine=tree.");
+        System.exit(64);
+      }
+      try {
+        GlobalSnapshot.load(snapshot, interpreter);
+      } catch (IOException e) {
+        System.err.println("Could not load " + snapshot + ": " + e.getMessage());
+        System.exit(66);
+      }
+    }
+
+    if (scripts.isEmpty()) {
       runPrompt();
+    } else {
+      runFiles(scripts);
     }
+    out.flush();
   };
 
-  private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+  // what scanning and parsing one script produced, its errors are kept until it's that script's turn
+  private static class ParsedFile {
+    final Path path;
+    final List<Stmt> statements;
+    final Diagnostics diagnostics;
+
+    ParsedFile(Path path, List<Stmt> statements, Diagnostics diagnostics) {
+      this.path = path;
+      this.statements = statements;
+      this.diagnostics = diagnostics;
+    }
+  }
+
+  /**
+   * Takes any number of scripts and directories (the .lox files under a directory are taken in path order).
+   * All of them are scanned and parsed in parallel on the common ForkJoinPool, since that part only depends on each file,
+   * and then they run one after the other in the order given, sharing the same globals like lines in the REPL do.
+   * A script with compile errors is reported and skipped, the rest still run.
+   */
+  private static void runFiles(List<String> arguments) throws IOException {
+    List<Path> paths = new ArrayList<>();
+    for (String argument : arguments) {
+      Path path = Paths.get(argument);
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> files = Files.walk(path)) {
+          files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".lox"))
+              .sorted()
+              .forEach(paths::add);
+        }
+      } else if (Files.isRegularFile(path)) {
+        paths.add(path);
+      } else {
+        System.err.println("Could not read " + argument + ": no such file or directory.");
+        System.exit(66);
+      }
+    }
+
+    // with a single script the errors look exactly like they always did, with several we say which file they're from
+    boolean several = paths.size() > 1;
+    boolean failed = false;
+
+    List<ParsedFile> parsed;
+    try {
+      parsed = parseAll(paths);
+    } catch (IOException e) {
+      System.err.println("Could not read a script: " + e);
+      System.exit(66);
+      return;
+    }
+
+    for (ParsedFile file : parsed) {
+      if (file.diagnostics.hadError()) flushOutput();
+      // scanner errors first: Scanner scans the whole file before parsing, DfaScanner and Utf8Scanner
+      // scan as the parser goes, and stderr has to read the same whichever one was used
+      for (Diagnostics.Diagnostic error : file.diagnostics.errors()) {
+        if (error.token == null) System.err.println(several ? file.path + ": " + error : error);
+      }
+      for (Diagnostics.Diagnostic error : file.diagnostics.errors()) {
+        if (error.token != null) System.err.println(several ? file.path + ": " + error : error);
+      }
+      if (file.diagnostics.hadError()) {
+        failed = true;
+        continue;
+      }
+
+      run(file.statements);
 
-    if (hadError) System.exit(65);
+      // the bytecode compilers can still report errors
+      if (hadError) failed = true;
+      hadError = false;
+    }
+
+    out.flush();
+    reportProfile();
+    reportMetrics();
+    if (failed) System.exit(65);
     if (hadRuntimeError) System.exit(70);
+  }
 
-    
-  };
+  private static List<ParsedFile> parseAll(List<Path> paths) throws IOException {
+    if (paths.size() == 1) return List.of(parse(paths.get(0)));
+
+    List<Callable<ParsedFile>> tasks = new ArrayList<>();
+    for (Path path : paths) {
+      tasks.add(() -> parse(path));
+    }
+
+    // invokeAll hands the results back in the order of the tasks, whichever finished first
+    List<ParsedFile> parsed = new ArrayList<>();
+    for (Future<ParsedFile> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+      try {
+        parsed.add(result.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while parsing scripts");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+    return parsed;
+  }
+
+  // runs on a pool thread, so everything it reports goes to the file's own Diagnostics
+  private static ParsedFile parse(Path path) throws IOException {
+    Diagnostics diagnostics = new Diagnostics();
+    List<Stmt> statements;
+
+    if (mapFiles) {
+      // the file is never copied onto the heap, Utf8Scanner reads the mapped bytes in place
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        String key = cache != null ? AstCache.key(bytes, "UTF-8") : null;
+        statements = cached(key);
+        if (statements == null) {
+          statements = parse(new Parser(new Utf8Scanner(bytes, diagnostics), diagnostics), diagnostics, key);
+        }
+      }
+    } else {
+      byte[] bytes = Files.readAllBytes(path);
+      Charset charset = Charset.defaultCharset();
+      String key = cache != null ? AstCache.key(ByteBuffer.wrap(bytes), charset.name()) : null;
+      statements = cached(key);
+      if (statements == null) {
+        statements = parse(parser(new String(bytes, charset), diagnostics), diagnostics, key);
+      }
+    }
+
+    return new ParsedFile(path, statements, diagnostics);
+  }
+
+  // the cached statements for this script if there are any, so it isn't scanned or parsed at all
+  private static List<Stmt> cached(String key) {
+    if (key == null) return null;
+
+    List<Stmt> statements = cache.load(key);
+    if (statements != null && verbose) System.err.println("[cache] hit " + key);
+    return statements;
+  }
+
+  // cacheKey is set when the parse should be saved to the AST cache (only ever done for error-free parses)
+  private static List<Stmt> parse(Parser parser, Diagnostics diagnostics, String cacheKey) {
+    LoxEvents.Parse event = new LoxEvents.Parse();
+    int errorsBefore = diagnostics.errorCount();
+    Metrics.Span span = metrics != null ? metrics.begin(Metrics.Phase.PARSE) : null;
+    event.begin();
+    List<Stmt> statements = parser.parse();
+    event.end();
+    if (span != null) {
+      span.end();
+      metrics.addTokens(parser.tokenCount());
+      metrics.addNodes(statements);
+    }
+    if (event.shouldCommit()) {
+      event.tokens = parser.tokenCount();
+      event.statements = statements.size();
+      event.errors = diagnostics.errorCount() - errorsBefore;
+      event.commit();
+    }
+
+    if (cacheKey != null && !diagnostics.hadError()) cache.store(cacheKey, statements);
+    return statements;
+  }
 
   private static void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
@@ -50,30 +330,138 @@ public class Lox {
         System.out.print("> ");
         String line = reader.readLine();
         if(line == null) break;
+        if (line.startsWith(":")) {
+          command(line);
+          continue;
+        }
         run(line);
+        // an async or size-flushed sink still has to show this line's output before the next prompt
+        out.flush();
         hadError = false;
     };
+    reportProfile();
+    reportMetrics();
   };
 
-  private static void run(String source) {
-    Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
+  // REPL commands, which aren't Lox so they start with a ':' (not a Lox token)
+  private static void command(String line) {
+    String[] parts = line.trim().split("\\s+", 2);
+    String name = parts[0];
+    if ((name.equals(":save") || name.equals(":load")) && parts.length == 2) {
+      if (engine != Engine.TREE) {
+        System.err.println("Global snapshots need --engine=tree.");
+        return;
+      }
 
-    Parser parser = new Parser(tokens);
+      Path file = Paths.get(parts[1]);
+      try {
+        if (name.equals(":save")) {
+          System.out.println("Saved " + GlobalSnapshot.save(file, interpreter) + " globals to " + file + ".");
+        } else {
+          System.out.println("Loaded " + GlobalSnapshot.load(file, interpreter) + " globals from " + file + ".");
+        }
+      } catch (IOException e) {
+        System.err.println("Could not " + name.substring(1) + " " + file + ": " + e.getMessage());
+      }
+      return;
+    }
+
+    System.err.println("Unknown command '" + line.trim() + "'. Commands: :save <file>, :load <file>.");
+  }
+
+  private static void run(String source) {
     // Expr expression = parser.parse();
-    List<Stmt> statements = parser.parse();
+    List<Stmt> statements = parse(parser(source, Diagnostics.CONSOLE), Diagnostics.CONSOLE, null);
 
     if(hadError) return;
 
+    run(statements);
+  }
+
+  private static Parser parser(String source, Diagnostics diagnostics) {
+    // the parser pulls tokens straight from the table-driven scanner as it goes, no token list in between
+    if (useDfa) return new Parser(new DfaScanner(source, diagnostics), diagnostics);
+
+    // scans into a compact TokenBuffer first, so no Token objects get built except the few the parser keeps
+    LoxEvents.Scan event = new LoxEvents.Scan();
+    int errorsBefore = diagnostics.errorCount();
+    Metrics.Span span = metrics != null ? metrics.begin(Metrics.Phase.SCAN) : null;
+    event.begin();
+    TokenBuffer tokens = new Scanner(source, diagnostics).scanCompact();
+    event.end();
+    if (span != null) span.end();
+    if (event.shouldCommit()) {
+      event.tokens = tokens.size();
+      event.errors = diagnostics.errorCount() - errorsBefore;
+      event.commit();
+    }
+    return new Parser(tokens, diagnostics);
+  }
+
+  private static void run(List<Stmt> statements) {
+    // folds constant expressions like `2 * 3.14` before anything runs
+    Optimizer optimizer = new Optimizer();
+    statements = optimizer.optimize(statements);
+    if (verbose) {
+      System.err.println("[optimizer] removed " + optimizer.removedNodes + " nodes by constant folding");
+    }
+
+    // works out where every local lives so the interpreter doesn't have to search for it
+    // (and gives every global name its symbol id in the engine's symbol table)
+    LoxEvents.Resolve resolveEvent = new LoxEvents.Resolve();
+    Metrics.Span resolveSpan = metrics != null ? metrics.begin(Metrics.Phase.RESOLVE) : null;
+    resolveEvent.begin();
+    Resolver resolver = new Resolver(symbols());
+    resolver.resolve(statements);
+    resolveEvent.end();
+    if (resolveSpan != null) resolveSpan.end();
+    if (resolveEvent.shouldCommit()) {
+      resolveEvent.statements = statements.size();
+      resolveEvent.commit();
+    }
+
     // Uncomment this to see the AST
     // System.out.println(new AstPrinter().print(expression));
-    
 
+    // hadRuntimeError sticks for the exit code, so it's cleared for the run to see whether this one failed
+    LoxEvents.Interpret event = new LoxEvents.Interpret();
+    boolean earlierRuntimeError = hadRuntimeError;
+    hadRuntimeError = false;
+    Metrics.Span span = metrics != null ? metrics.begin(Metrics.Phase.INTERPRET) : null;
+    event.begin();
+    try {
+      execute(statements);
+    } finally {
+      event.end();
+      if (span != null) span.end();
+      if (event.shouldCommit()) {
+        event.engine = engine.name().toLowerCase();
+        event.statements = statements.size();
+        event.runtimeError = hadRuntimeError;
+        event.commit();
+      }
+      hadRuntimeError |= earlierRuntimeError;
+    }
+  }
+
+  private static void execute(List<Stmt> statements) {
+    if (engine == Engine.VM) {
+      runVm(statements);
+      return;
+    }
+    if (engine == Engine.JVM) {
+      runJvm(statements);
+      return;
+    }
+    if (engine == Engine.NANBOX) {
+      runNanBox(statements);
+      return;
+    }
 
     if (isReplMode && statements.size() == 1 && statements.get(0) instanceof Stmt.Expression) {
       Stmt.Expression exprStmt = (Stmt.Expression) statements.get(0);
       Object result = interpreter.evaluateExpression(exprStmt.expression); 
-      System.out.println(stringify(result));
+      Interpreter.print(out, result);
 
       // this is basically like the former way interpreter.interpret used to work for expressions where it used evaluate instead of execute
     } else {
@@ -81,12 +469,77 @@ public class Lox {
     }
   }
 
+  // same flow as the tree-walking path above, but compiles to bytecode first
+  private static void runVm(List<Stmt> statements) {
+    if (isReplMode && statements.size() == 1 && statements.get(0) instanceof Stmt.Expression) {
+      Stmt.Expression exprStmt = (Stmt.Expression) statements.get(0);
+      Chunk chunk = new Compiler().compileExpression(exprStmt.expression);
+      if (hadError) return;
+
+      Interpreter.print(out, vm.run(chunk));
+    } else {
+      Chunk chunk = new Compiler().compile(statements);
+      if (hadError) return;
+
+      vm.interpret(chunk);
+    }
+  }
+
+  // same again, but the program becomes JVM classes that HotSpot runs (and JITs) directly
+  private static void runJvm(List<Stmt> statements) {
+    if (isReplMode && statements.size() == 1 && statements.get(0) instanceof Stmt.Expression) {
+      Stmt.Expression exprStmt = (Stmt.Expression) statements.get(0);
+      List<byte[]> classes = new JvmCompiler().compileExpression(exprStmt.expression);
+      if (hadError) return;
+
+      Interpreter.print(out, jvm.run(JvmRuntime.load(classes)));
+    } else {
+      List<byte[]> classes = new JvmCompiler().compile(statements);
+      if (hadError) return;
+
+      jvm.interpret(JvmRuntime.load(classes));
+    }
+  }
+
+  // the same tree-walking flow, on NaN-boxed values
+  private static void runNanBox(List<Stmt> statements) {
+    if (isReplMode && statements.size() == 1 && statements.get(0) instanceof Stmt.Expression) {
+      Stmt.Expression exprStmt = (Stmt.Expression) statements.get(0);
+      Interpreter.print(out, nanbox.evaluateExpression(exprStmt.expression));
+    } else {
+      nanbox.interpret(statements);
+    }
+  }
+
+  // each engine keeps its own symbol table, so global ids stay valid for the whole session
+  private static SymbolTable symbols() {
+    switch (engine) {
+      case VM: return vm.symbols;
+      case JVM: return jvm.symbols;
+      case NANBOX: return nanbox.symbols;
+      default: return interpreter.symbols;
+    }
+  }
+
+  // errors go to stderr unbuffered, so whatever the script printed before them has to come out first
+  private static void flushOutput() {
+    if (out != null) out.flush();
+  }
+
+  private static void reportProfile() {
+    if (profile) ((ProfilingInterpreter) interpreter).report(System.err);
+  }
+
+  private static void reportMetrics() {
+    if (metrics != null) System.err.println(metrics.toJson(engine.name().toLowerCase(), engine == Engine.TREE ? interpreter : null));
+  }
 
   static void error(int line, String message) {
     report(line, "", message);
   };
 
-  private static void report(int line, String where, String message) {
+  static void report(int line, String where, String message) {
+    flushOutput();
     System.err.println(
         "[line " + line + "] Error" + where + ": " + message
     ); 
@@ -102,22 +555,9 @@ public class Lox {
   }
 
   static void runtimeError(RuntimeError error) {
+    flushOutput();
     System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
     hadRuntimeError = true;
   }
 
-  private static String stringify(Object object) {
-    if (object == null) return "nil";
-
-    if (object instanceof Double) {
-      String text = object.toString();
-      if (text.endsWith(".0")) {
-        text = text.substring(0, text.length() - 2);
-      }
-      return text;
-    }
-
-    return object.toString();
-  }
-
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs Lox from inside another Java program. Unlike the command line in Lox, which is all static,
+ * every LoxEngine is a session of its own: its own Interpreter and globals, its own error state and its own output sink.
+ * Nothing is shared between engines except immutable tables (keywords and the like),
+ * so any number of them can run on different threads at the same time without waiting on each other.
+ *
+ * Globals survive from one run() to the next, like lines in the REPL. One engine runs one script at a time,
+ * run() is synchronized so an engine can still be handed between threads safely.
+ */
+public final class LoxEngine {
+    private final SymbolTable symbols = new SymbolTable();
+    private final Interpreter interpreter;
+    private final OutputSink out;
+
+    private final List<String> errors = new ArrayList<>();
+    private boolean hadError = false;
+    private boolean hadRuntimeError = false;
+
+    public LoxEngine() {
+        this(OutputSink.STDOUT);
+    }
+
+    public LoxEngine(OutputSink out) {
+        this.out = out;
+        this.interpreter = new Interpreter(symbols, out);
+    }
+
+    /**
+     * Scans, parses and runs the source. Returns false if it had a compile error (then nothing ran)
+     * or a runtime error (then it ran up to that point). The messages are in errors(), worded like the command line's.
+     */
+    public synchronized boolean run(String source) {
+        errors.clear();
+        hadError = false;
+        hadRuntimeError = false;
+
+        Diagnostics diagnostics = new Diagnostics();
+        List<Stmt> statements = new Parser(new Scanner(source, diagnostics).scanCompact(), diagnostics).parse();
+        if (diagnostics.hadError()) {
+            errors.addAll(diagnostics.messages());
+            hadError = true;
+            return false;
+        }
+
+        statements = new Optimizer().optimize(statements);
+        new Resolver(symbols).resolve(statements);
+
+        try {
+            interpreter.run(statements);
+        } catch (RuntimeError error) {
+            errors.add(error.getMessage() + "\n[line " + error.token.line + "]");
+            hadRuntimeError = true;
+        } finally {
+            out.flush();
+        }
+
+        return !hadRuntimeError;
+    }
+
+    /** The errors of the last run(). */
+    public synchronized List<String> errors() {
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    public synchronized boolean hadError() {
+        return hadError;
+    }
+
+    public synchronized boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+}
@@ -0,0 +1,96 @@
+package com.craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Java Flight Recorder events Lox emits, so a recording shows the Lox phases next to GC, allocation
+ * and everything else the JVM records. They show up under "Lox" in JMC, or with `jfr print --categories Lox`.
+ *
+ * When nothing is recording, begin()/end()/shouldCommit() do nothing and the JIT drops them,
+ * so the events are always there and cost nothing until someone turns on a recording.
+ */
+final class LoxEvents {
+    private LoxEvents() {}
+
+    // only with the default scanner. The streaming ones (--scanner=dfa, --mmap) scan as the parser asks for tokens,
+    // their scanning time is part of the Parse event
+    @Name("lox.Scan")
+    @Label("Lox Scan")
+    @Category("Lox")
+    @Description("Scanning a script into tokens")
+    @StackTrace(false)
+    static final class Scan extends Event {
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Errors")
+        int errors;
+    }
+
+    @Name("lox.Parse")
+    @Label("Lox Parse")
+    @Category("Lox")
+    @Description("Parsing a script's tokens into statements")
+    @StackTrace(false)
+    static final class Parse extends Event {
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Statements")
+        int statements;
+
+        @Label("Errors")
+        int errors;
+    }
+
+    @Name("lox.Resolve")
+    @Label("Lox Resolve")
+    @Category("Lox")
+    @Description("Resolving where every variable lives")
+    @StackTrace(false)
+    static final class Resolve extends Event {
+        @Label("Statements")
+        int statements;
+    }
+
+    // for --engine=vm and --engine=jvm this includes compiling the statements to bytecode
+    @Name("lox.Interpret")
+    @Label("Lox Interpret")
+    @Category("Lox")
+    @Description("Running a script's statements")
+    @StackTrace(false)
+    static final class Interpret extends Event {
+        @Label("Engine")
+        String engine;
+
+        @Label("Statements")
+        int statements;
+
+        @Label("Runtime Error")
+        boolean runtimeError;
+    }
+
+    // one per top-level statement the tree-walker runs, so it's off by default and only
+    // the slow ones are kept. Turn it on (and pick the threshold) in the recording settings
+    @Name("lox.Statement")
+    @Label("Lox Long Statement")
+    @Category("Lox")
+    @Description("A top-level statement that took longer than the threshold")
+    @Enabled(false)
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class Statement extends Event {
+        @Label("Line")
+        int line;
+
+        @Label("Statement")
+        String kind;
+    }
+}
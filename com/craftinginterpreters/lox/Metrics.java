@@ -0,0 +1,125 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * What `--metrics=json` reports at the end of a run: wall time and allocated bytes per phase, how many tokens
+ * and syntax tree nodes the scripts had, and how many Environments the tree-walker made and how deep they got.
+ *
+ * Only the phase boundaries are measured (two clock reads and two allocation counter reads each), nothing per token
+ * or per node, so collecting them costs next to nothing. Scripts are parsed in parallel, so the parse numbers are
+ * summed over the threads that did the work and can add up to more than the run's wall time.
+ */
+final class Metrics {
+    enum Phase { SCAN, PARSE, RESOLVE, INTERPRET }
+
+    // the com.sun.management one can tell how much a single thread has allocated
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] bytes = new long[Phase.values().length];
+    private long tokens = 0;
+    private long nodes = 0;
+
+    // a phase being measured on the current thread, end() adds it to the totals
+    final class Span {
+        private final Phase phase;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Span(Phase phase) {
+            this.phase = phase;
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        void end() {
+            long elapsed = System.nanoTime() - startNanos;
+            long allocated = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+            add(phase, elapsed, allocated);
+        }
+    }
+
+    Span begin(Phase phase) {
+        return new Span(phase);
+    }
+
+    private synchronized void add(Phase phase, long elapsed, long allocated) {
+        nanos[phase.ordinal()] += elapsed;
+        // -1 once any thread couldn't tell, the total would be wrong otherwise
+        bytes[phase.ordinal()] = allocated < 0 || bytes[phase.ordinal()] < 0 ? -1 : bytes[phase.ordinal()] + allocated;
+    }
+
+    synchronized void addTokens(int count) {
+        tokens += count;
+    }
+
+    synchronized void addNodes(List<Stmt> statements) {
+        nodes += countNodes(statements);
+    }
+
+    // environments and peak depth come from the tree-walker, the other engines don't have any (so they're null)
+    synchronized String toJson(String engine, Interpreter interpreter) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"engine\":\"").append(engine).append("\",\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) json.append(',');
+            json.append('"').append(phase.name().toLowerCase()).append("\":{\"wallNanos\":").append(nanos[phase.ordinal()])
+                .append(",\"allocatedBytes\":").append(bytes[phase.ordinal()] < 0 ? "null" : Long.toString(bytes[phase.ordinal()]))
+                .append('}');
+        }
+        json.append("},\"tokens\":").append(tokens).append(",\"nodes\":").append(nodes).append(",\"environments\":");
+        if (interpreter != null) {
+            json.append("{\"created\":").append(interpreter.environmentsCreated)
+                .append(",\"peakDepth\":").append(interpreter.peakEnvironmentDepth).append('}');
+        } else {
+            json.append("null");
+        }
+        return json.append('}').toString();
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS == null) return -1;
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!threads.isThreadAllocatedMemorySupported()) return null;
+            if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        } catch (ClassCastException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    // statements that failed to parse are null, they don't count
+    private static long countNodes(List<Stmt> statements) {
+        long count = 0;
+        for (Stmt statement : statements) {
+            if (statement != null) count += countNodes(statement);
+        }
+        return count;
+    }
+
+    private static long countNodes(Stmt stmt) {
+        if (stmt instanceof Stmt.Block) return 1 + countNodes(((Stmt.Block) stmt).statements);
+        if (stmt instanceof Stmt.Expression) return 1 + countNodes(((Stmt.Expression) stmt).expression);
+        if (stmt instanceof Stmt.Print) return 1 + countNodes(((Stmt.Print) stmt).expression);
+        if (stmt instanceof Stmt.Var) return 1 + countNodes(((Stmt.Var) stmt).initializer);
+        return 1;
+    }
+
+    private static long countNodes(Expr expr) {
+        if (expr == null) return 0;
+        if (expr instanceof Expr.Binary) {
+            return 1 + countNodes(((Expr.Binary) expr).left) + countNodes(((Expr.Binary) expr).right);
+        }
+        if (expr instanceof Expr.Unary) return 1 + countNodes(((Expr.Unary) expr).right);
+        if (expr instanceof Expr.Grouping) return 1 + countNodes(((Expr.Grouping) expr).expression);
+        if (expr instanceof Expr.Assign) return 1 + countNodes(((Expr.Assign) expr).value);
+        return 1;
+    }
+}
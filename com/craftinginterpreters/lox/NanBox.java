@@ -0,0 +1,69 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The value representation of NanBoxInterpreter: every Lox value packed into one long, so nothing is boxed.
+ *
+ * A number is just the bits of its double. A double whose exponent bits are all set and whose two highest
+ * mantissa bits are set too (QNAN below) is a NaN no arithmetic ever produces, because every NaN is stored
+ * as the one canonical NaN (Double.doubleToLongBits), which only has the highest of them.
+ * That leaves the low bits of those NaNs free for everything else:
+ *
+ *   nil, false, true and the two "no value" markers    QNAN | 1..5
+ *   a reference to a heap object (a String or Rope)    SIGN_BIT | QNAN | handle
+ *
+ * A handle is an index into the interpreter's table of heap objects (Java has no pointers to put there).
+ *
+ * With canonical NaNs, two numbers are == exactly when their bits are, which is also what Double.equals
+ * (and so Interpreter.isEqual) says: NaN equals NaN, and 0 and -0 are different.
+ */
+final class NanBox {
+    private NanBox() {}
+
+    private static final long SIGN_BIT = 0x8000000000000000L;
+    private static final long QNAN = 0x7ffc000000000000L;
+    private static final long REF = SIGN_BIT | QNAN;
+
+    static final long NIL = QNAN | 1;
+    static final long FALSE = QNAN | 2;
+    static final long TRUE = QNAN | 3;
+    // the same markers Environment keeps as objects: declared but not assigned yet, and a global `var` never defined
+    static final long UNINITIALIZED = QNAN | 4;
+    static final long UNDEFINED = QNAN | 5;
+
+    static long number(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    static double asNumber(long value) {
+        return Double.longBitsToDouble(value);
+    }
+
+    static boolean isNumber(long value) {
+        return (value & QNAN) != QNAN;
+    }
+
+    static boolean isNumbers(long a, long b) {
+        return (a & QNAN) != QNAN && (b & QNAN) != QNAN;
+    }
+
+    static long bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    static long ref(int handle) {
+        return REF | handle;
+    }
+
+    static boolean isRef(long value) {
+        return (value & REF) == REF;
+    }
+
+    static int handle(long value) {
+        return (int) value;
+    }
+
+    // in Lox, only false and nil are falsey
+    static boolean isTruthy(long value) {
+        return value != FALSE && value != NIL;
+    }
+}
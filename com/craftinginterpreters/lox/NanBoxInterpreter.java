@@ -0,0 +1,355 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tree-walking interpreter once more, picked with --engine=nanbox, but every value is a NaN-boxed long (see NanBox)
+ * instead of an Object. Expressions are evaluated through Expr.LongVisitor, so a number never becomes a Double:
+ * arithmetic, comparisons, truthiness and equality are all done on the long's bits, with no allocation and no instanceof.
+ * It has to behave exactly like the Interpreter, so it prints the same way and has the same error messages.
+ *
+ * Strings are the only heap values. They sit in `heap` and a value holds their index there (a handle).
+ * Between two statements the only values still around are the ones in variables, so that is when the table is
+ * cleaned up: once it has filled up, the strings some variable still refers to are moved to a new table and
+ * the variables are given their new handles.
+ *
+ * Like the interpreter in Lox, one NanBoxInterpreter is kept for the whole REPL session so globals survive between lines.
+ */
+final class NanBoxInterpreter implements Expr.LongVisitor, Stmt.Visitor<Void> {
+    // the heap table is collected whenever it has this many entries, or twice what was still live after the last collection
+    private static final int INITIAL_HEAP = 1024;
+
+    // a block's variables, reached by the (depth, slot) the Resolver worked out
+    private static final class Scope {
+        final long[] slots;
+        final Scope enclosing;
+
+        Scope(Scope enclosing, int size) {
+            this.enclosing = enclosing;
+            slots = new long[size];
+            Arrays.fill(slots, NanBox.NIL);
+        }
+    }
+
+    // globals are indexed by the symbol id the Resolver gave their name, like in the Interpreter's global Environment
+    final SymbolTable symbols;
+    private long[] globals = new long[64];
+    // null at the top level
+    private Scope scope = null;
+    // where `print` goes
+    private final OutputSink out;
+
+    private Object[] heap = new Object[INITIAL_HEAP];
+    private int heapSize = 0;
+    private int collectAt = INITIAL_HEAP;
+    // what collect() copies the live strings into (then it and `heap` trade places) and its forwarding table,
+    // both kept so a collection doesn't allocate anything unless the heap has grown
+    private Object[] spare = new Object[INITIAL_HEAP];
+    private int[] moved = new int[INITIAL_HEAP];
+
+    NanBoxInterpreter() {
+        this(new SymbolTable());
+    }
+
+    NanBoxInterpreter(SymbolTable symbols) {
+        this(symbols, OutputSink.STDOUT);
+    }
+
+    NanBoxInterpreter(SymbolTable symbols, OutputSink out) {
+        this.symbols = symbols;
+        this.out = out;
+        Arrays.fill(globals, NanBox.UNDEFINED);
+    }
+
+    void interpret(List<Stmt> statements) {
+        try {
+            run(statements);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    // like interpret(), but a RuntimeError is left for the caller to report
+    void run(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            LoxEvents.Statement event = new LoxEvents.Statement();
+            event.begin();
+            execute(statement);
+            event.end();
+            if (event.shouldCommit()) {
+                event.line = Interpreter.line(statement);
+                event.kind = statement.getClass().getSimpleName();
+                event.commit();
+            }
+        }
+    }
+
+    // for the REPL, which prints the value of a lone expression
+    Object evaluateExpression(Expr expression) {
+        return toObject(evaluate(expression));
+    }
+
+    private long evaluate(Expr expr) {
+        return expr.acceptLong(this);
+    }
+
+    private void execute(Stmt stmt) {
+        stmt.accept(this);
+        if (heapSize >= collectAt) collect();
+    }
+
+    @Override
+    public long visitLiteralExpr(Expr.Literal expr) {
+        return fromObject(expr.value);
+    }
+
+    @Override
+    public long visitGroupingExpr(Expr.Grouping expr) {
+        return evaluate(expr.expression);
+    }
+
+    @Override
+    public long visitUnaryExpr(Expr.Unary expr) {
+        long right = evaluate(expr.right);
+
+        switch (expr.operator.type) {
+            case MINUS:
+                if (!NanBox.isNumber(right)) throw new RuntimeError(expr.operator, "Operand must be a number.");
+                return NanBox.number(-NanBox.asNumber(right));
+            case BANG:
+                return NanBox.bool(!NanBox.isTruthy(right));
+        }
+
+        // Unreachable.
+        return NanBox.NIL;
+    }
+
+    @Override
+    public long visitBinaryExpr(Expr.Binary expr) {
+        long left = evaluate(expr.left);
+        long right = evaluate(expr.right);
+        Token operator = expr.operator;
+
+        switch (operator.type) {
+            case GREATER:
+                checkNumberOperands(operator, left, right);
+                return NanBox.bool(NanBox.asNumber(left) > NanBox.asNumber(right));
+            case GREATER_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return NanBox.bool(NanBox.asNumber(left) >= NanBox.asNumber(right));
+            case LESS:
+                checkNumberOperands(operator, left, right);
+                return NanBox.bool(NanBox.asNumber(left) < NanBox.asNumber(right));
+            case LESS_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return NanBox.bool(NanBox.asNumber(left) <= NanBox.asNumber(right));
+            case BANG_EQUAL:
+                return NanBox.bool(!isEqual(left, right));
+            case EQUAL_EQUAL:
+                return NanBox.bool(isEqual(left, right));
+            case MINUS:
+                checkNumberOperands(operator, left, right);
+                return NanBox.number(NanBox.asNumber(left) - NanBox.asNumber(right));
+            case PLUS:
+                if (NanBox.isNumbers(left, right)) {
+                    return NanBox.number(NanBox.asNumber(left) + NanBox.asNumber(right));
+                }
+                if (NanBox.isRef(left) && NanBox.isRef(right)) {
+                    return reference(Rope.concat(heap[NanBox.handle(left)], heap[NanBox.handle(right)]));
+                }
+
+                throw new RuntimeError(operator,
+                    "Operands must be two numbers or two strings.");
+            case SLASH:
+                checkNumberOperands(operator, left, right);
+                return NanBox.number(NanBox.asNumber(left) / NanBox.asNumber(right));
+            case STAR:
+                checkNumberOperands(operator, left, right);
+                return NanBox.number(NanBox.asNumber(left) * NanBox.asNumber(right));
+        }
+
+        return NanBox.NIL;
+    }
+
+    private static void checkNumberOperands(Token operator, long left, long right) {
+        if (NanBox.isNumbers(left, right)) return;
+
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    // the same bits are the same value (numbers included, see NanBox), only two strings can be equal with different ones
+    private boolean isEqual(long a, long b) {
+        if (a == b) return true;
+        if (!NanBox.isRef(a) || !NanBox.isRef(b)) return false;
+
+        return Interpreter.isEqual(heap[NanBox.handle(a)], heap[NanBox.handle(b)]);
+    }
+
+    @Override
+    public long visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth != -1) {
+            long value = ancestor(expr.depth).slots[expr.slot];
+            if (value == NanBox.UNINITIALIZED) throw uninitialized(expr.name);
+            return value;
+        }
+
+        long value = expr.slot < globals.length ? globals[expr.slot] : NanBox.UNDEFINED;
+        if (value == NanBox.UNDEFINED) {
+            throw new RuntimeError(expr.name, "Undefined variable '" + expr.name.lexeme + "'.");
+        }
+        if (value == NanBox.UNINITIALIZED) throw uninitialized(expr.name);
+        return value;
+    }
+
+    private static RuntimeError uninitialized(Token name) {
+        return new RuntimeError(name, "Variable '" + name.lexeme + "' used before initialization.");
+    }
+
+    @Override
+    public long visitAssignExpr(Expr.Assign expr) {
+        long value = evaluate(expr.value);
+
+        if (expr.depth != -1) {
+            ancestor(expr.depth).slots[expr.slot] = value;
+        } else {
+            if (expr.slot >= globals.length || globals[expr.slot] == NanBox.UNDEFINED) {
+                throw new RuntimeError(expr.name, "Undefined variable '" + expr.name.lexeme + "'.");
+            }
+            globals[expr.slot] = value;
+        }
+        return value;
+    }
+
+    private Scope ancestor(int distance) {
+        Scope scope = this.scope;
+        for (int i = 0; i < distance; i++) {
+            scope = scope.enclosing;
+        }
+        return scope;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        Scope previous = scope;
+        try {
+            scope = new Scope(previous, stmt.slotCount);
+
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+        } finally {
+            scope = previous;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        evaluate(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        long value = evaluate(stmt.expression);
+        if (NanBox.isNumber(value)) {
+            out.println(NanBox.asNumber(value));
+        } else {
+            out.println(stringify(value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        long value = stmt.initializer != null ? evaluate(stmt.initializer) : NanBox.UNINITIALIZED;
+
+        // a var at the top level is a global and its slot is the symbol id, anywhere else it's a local slot
+        if (scope == null) {
+            defineGlobal(stmt.slot, value);
+        } else {
+            scope.slots[stmt.slot] = value;
+        }
+        return null;
+    }
+
+    // the REPL can keep defining new globals, so the array grows to fit
+    private void defineGlobal(int symbol, long value) {
+        if (symbol >= globals.length) {
+            int size = globals.length;
+            globals = Arrays.copyOf(globals, Math.max(size * 2, symbol + 1));
+            Arrays.fill(globals, size, globals.length, NanBox.UNDEFINED);
+        }
+        globals[symbol] = value;
+    }
+
+    // literals and the REPL still hold plain objects: null, Boolean, Double or a String
+    private long fromObject(Object value) {
+        if (value == null) return NanBox.NIL;
+        if (value instanceof Double) return NanBox.number((double) value);
+        if (value instanceof Boolean) return NanBox.bool((boolean) value);
+        return reference(value);
+    }
+
+    Object toObject(long value) {
+        if (NanBox.isNumber(value)) return NanBox.asNumber(value);
+        if (NanBox.isRef(value)) return heap[NanBox.handle(value)];
+        if (value == NanBox.NIL) return null;
+        return value == NanBox.TRUE;
+    }
+
+    String stringify(long value) {
+        if (NanBox.isNumber(value)) return NumberFormatter.format(NanBox.asNumber(value));
+        if (NanBox.isRef(value)) return heap[NanBox.handle(value)].toString();
+        if (value == NanBox.NIL) return "nil";
+        return value == NanBox.TRUE ? "true" : "false";
+    }
+
+    // puts a string in the heap table, which grows whenever it's full (a statement can make any number of strings)
+    private long reference(Object object) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heap.length * 2);
+        heap[heapSize] = object;
+        return NanBox.ref(heapSize++);
+    }
+
+    /**
+     * Only called between statements, when nothing but variables holds a handle. Copies the strings they refer to
+     * to the front of the spare table, in the order they're found, and gives every variable its string's new handle.
+     * The next collection is at twice what survived, so collections get rarer as more strings stay alive.
+     */
+    private void collect() {
+        if (spare.length < heapSize) spare = new Object[heap.length];
+        if (moved.length < heapSize) moved = new int[heap.length];
+
+        int size = move(globals, spare, 0);
+        for (Scope scope = this.scope; scope != null; scope = scope.enclosing) {
+            size = move(scope.slots, spare, size);
+        }
+
+        // the old table becomes the spare one, emptied so it doesn't keep dead strings alive
+        Arrays.fill(heap, 0, heapSize, null);
+        Arrays.fill(moved, 0, heapSize, 0);
+        Object[] live = spare;
+        spare = heap;
+        heap = live;
+        heapSize = size;
+        collectAt = Math.max(INITIAL_HEAP, size * 2);
+    }
+
+    // moved[handle] is the new handle + 1, or 0 while that string hasn't been moved yet
+    private int move(long[] slots, Object[] live, int size) {
+        for (int i = 0; i < slots.length; i++) {
+            long value = slots[i];
+            if (!NanBox.isRef(value)) continue;
+
+            int handle = NanBox.handle(value);
+            if (moved[handle] == 0) {
+                live[size] = heap[handle];
+                moved[handle] = ++size;
+            }
+            slots[i] = NanBox.ref(moved[handle] - 1);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,57 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Formats Lox numbers exactly like stringify always has: Double.toString with a trailing ".0" cut off.
+ *
+ * Almost every number a script prints is integral and small, and for those Double.toString gives "<digits>.0",
+ * so the digits can be written straight into a buffer with no String built at all (append()).
+ * Everything else (fractions, and integral values from 1e7 up, which Double.toString writes as "1.0E7")
+ * still goes through Double.toString, because its output is what Lox has always printed and
+ * it has to stay the same character for character.
+ */
+final class NumberFormatter {
+    // from here on Double.toString switches to computerized scientific notation
+    private static final double PLAIN_LIMIT = 1e7;
+
+    private NumberFormatter() {}
+
+    static String format(double value) {
+        if (isSmallIntegral(value)) {
+            StringBuilder digits = new StringBuilder(9);
+            appendIntegral(digits, value);
+            return digits.toString();
+        }
+
+        return Double.toString(value);
+    }
+
+    static void append(StringBuilder out, double value) {
+        if (isSmallIntegral(value)) {
+            appendIntegral(out, value);
+        } else {
+            out.append(Double.toString(value));
+        }
+    }
+
+    // NaN and the infinities fail the comparison, so they take the Double.toString path
+    private static boolean isSmallIntegral(double value) {
+        return value > -PLAIN_LIMIT && value < PLAIN_LIMIT && value == (long) value;
+    }
+
+    private static void appendIntegral(StringBuilder out, double value) {
+        // -0.0 == 0 but prints as "-0"
+        if (value < 0 || (value == 0 && 1 / value < 0)) out.append('-');
+
+        int number = (int) Math.abs(value);
+        if (number == 0) {
+            out.append('0');
+            return;
+        }
+
+        int divisor = 1;
+        while (divisor <= number / 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + number / divisor % 10));
+        }
+    }
+}
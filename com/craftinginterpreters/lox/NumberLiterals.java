@@ -0,0 +1,97 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Turns number literals into values for the scanners, without a substring and Double.parseDouble for each one.
+ *
+ * parse() reads the digits straight out of the source. A Lox number is digits with an optional fraction, so when
+ * all its digits fit in 53 bits the value is exact as a long, and if there is a fraction with at most 22 digits,
+ * dividing by the (also exact) power of ten is one correctly rounded IEEE operation (Clinger's fast path).
+ * Anything longer falls back to Double.parseDouble, so every literal gets exactly the value it always did.
+ *
+ * An instance is the constant table of one scan: intern() hands out one boxed Double per distinct value,
+ * so every `0` or `1.5` in a script shares a single instance in the tokens and the Literal nodes.
+ */
+final class NumberLiterals {
+    // 2^53, up to here every long is exactly a double
+    private static final long EXACT = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    // open addressing on the value's bits, so looking a value up never boxes it
+    private long[] keys = new long[64];
+    private Double[] values = new Double[64];
+    private int size = 0;
+
+    /**
+     * The value of the literal in text[start, end): digits, optionally followed by '.' and more digits.
+     */
+    static double parse(CharSequence text, int start, int end) {
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+
+            // past 2^53 it wouldn't be exact any more (and this also keeps the long from overflowing)
+            mantissa = mantissa * 10 + (c - '0');
+            if (mantissa > EXACT) return Double.parseDouble(text.subSequence(start, end).toString());
+            if (fraction) fractionDigits++;
+        }
+
+        if (fractionDigits == 0) return mantissa;
+        if (fractionDigits < POWERS_OF_TEN.length) return mantissa / POWERS_OF_TEN[fractionDigits];
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+
+    /**
+     * The one boxed Double this scan uses for `value`.
+     */
+    Double intern(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        int mask = values.length - 1;
+        int index = hash(bits) & mask;
+        while (values[index] != null) {
+            if (keys[index] == bits) return values[index];
+            index = (index + 1) & mask;
+        }
+
+        Double boxed = value;
+        keys[index] = bits;
+        values[index] = boxed;
+        if (++size * 2 > values.length) grow();
+        return boxed;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Double[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Double[oldValues.length * 2];
+
+        int mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int index = hash(oldKeys[i]) & mask;
+            while (values[index] != null) index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    // the bits of small integers and short fractions are all at the top, this mixes them into the low ones (MurmurHash3's finalizer)
+    private static int hash(long bits) {
+        bits ^= bits >>> 33;
+        bits *= 0xff51afd7ed558ccdL;
+        bits ^= bits >>> 33;
+        return (int) bits;
+    }
+}
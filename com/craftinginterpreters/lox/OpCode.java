@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The instruction set of the bytecode VM. Each opcode is one byte in Chunk.code,
+ * some are followed by operands (noted next to them), every operand is a 2 byte unsigned index.
+ *
+ * These are plain byte constants instead of an enum so the VM can switch on the raw byte
+ * without going through ordinal().
+ */
+final class OpCode {
+    static final byte CONSTANT = 0;              // constant index
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+
+    static final byte GET_LOCAL = 5;             // local index, name constant (for the error message)
+    static final byte SET_LOCAL = 6;             // local index
+    static final byte DEFINE_LOCAL = 7;          // local index
+    static final byte DEFINE_LOCAL_UNINIT = 8;   // local index
+    static final byte GET_GLOBAL = 9;            // symbol id
+    static final byte SET_GLOBAL = 10;           // symbol id
+    static final byte DEFINE_GLOBAL = 11;        // symbol id
+    static final byte DEFINE_GLOBAL_UNINIT = 12; // symbol id
+
+    static final byte EQUAL = 13;
+    static final byte NOT_EQUAL = 14;
+    static final byte GREATER = 15;
+    static final byte GREATER_EQUAL = 16;
+    static final byte LESS = 17;
+    static final byte LESS_EQUAL = 18;
+    static final byte ADD = 19;
+    static final byte SUBTRACT = 20;
+    static final byte MULTIPLY = 21;
+    static final byte DIVIDE = 22;
+    static final byte NOT = 23;
+    static final byte NEGATE = 24;
+
+    static final byte PRINT = 25;
+    static final byte RETURN = 26;
+
+    private OpCode() {}
+}
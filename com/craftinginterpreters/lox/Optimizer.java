@@ -0,0 +1,140 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Constant folding. Runs after the parser (and before the Resolver) and replaces every Binary, Unary
+ * or Grouping whose operands are all literals with a single Literal holding the result,
+ * so something like `2 * 3.14 * 10` is worked out once instead of every time the code runs.
+ *
+ * The folding itself is done by evaluating the node with an Interpreter, so the result is exactly
+ * what the interpreter would have produced at runtime. If evaluating it throws a RuntimeError
+ * (e.g. `-"x"`) the node is left alone so the error still happens, and is reported, at runtime.
+ *
+ * The nodes are immutable, so any node with a folded child is rebuilt, everything else is returned as is.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    // only ever sees literal-only expressions, so it never touches any variables
+    private final Interpreter folder = new Interpreter();
+
+    // how many nodes folding has taken out of the tree so far
+    int removedNodes = 0;
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            optimized.add(optimize(statement));
+        }
+        return optimized;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // `expr` only has literals under it at this point. `size` is how many nodes it is made of (including itself)
+    private Expr fold(Expr expr, int size) {
+        try {
+            Object value = folder.evaluateExpression(expr);
+            // a literal holds a plain String, the compilers put it in their constant pools as one
+            if (value instanceof Rope) value = value.toString();
+            removedNodes += size - 1;
+            return new Expr.Literal(value);
+        } catch (RuntimeError error) {
+            return expr;
+        }
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(optimize(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return stmt;
+
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        return new Stmt.Var(stmt.name, initializer);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        if (value == expr.value) return expr;
+        return new Expr.Assign(expr.name, value);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (left != expr.left || right != expr.right) {
+            expr = new Expr.Binary(left, expr.operator, right);
+        }
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            return fold(expr, 3);
+        }
+        return expr;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+
+        // a grouping can't fail, so a literal inside one just replaces it
+        if (expression instanceof Expr.Literal) {
+            removedNodes++;
+            return expression;
+        }
+
+        if (expression == expr.expression) return expr;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (right != expr.right) {
+            expr = new Expr.Unary(expr.operator, right);
+        }
+
+        if (right instanceof Expr.Literal) {
+            return fold(expr, 2);
+        }
+        return expr;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+}
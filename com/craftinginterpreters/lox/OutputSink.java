@@ -0,0 +1,23 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Where `print` statements go. The command line prints to System.out,
+ * an embedding application (see LoxEngine) can send each session's output anywhere it likes.
+ */
+public interface OutputSink {
+    OutputSink STDOUT = System.out::println;
+
+    /** Called once per `print`, with the text without its line terminator. */
+    void println(String line);
+
+    /**
+     * Prints a number the way Lox shows it. This formats it into a String first,
+     * sinks with a buffer (BufferedOutput, AsyncOutput) write the digits straight into it instead.
+     */
+    default void println(double number) {
+        println(NumberFormatter.format(number));
+    }
+
+    /** Pushes out anything the sink is holding on to. */
+    default void flush() {}
+}
@@ -6,13 +6,42 @@ import java.util.List;
 
 class Parser {
 
-    private static class ParseError extends RuntimeException {}
+    // only there to unwind to declaration(), so it has no stack trace (filling one in was most of what an error cost)
+    // and one instance does for every error
+    private static class ParseError extends RuntimeException {
+        ParseError() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final ParseError PARSE_ERROR = new ParseError();
+
+    // the token the parser is looking at and the one it just consumed, see TokenCursor
+    private final TokenCursor tokens;
+    private final Diagnostics diagnostics;
+
+    // pulls tokens from the source (e.g. straight from the Scanner) as it goes
+    Parser(TokenSource source) {
+        this(source, Diagnostics.CONSOLE);
+    }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    Parser(TokenSource source, Diagnostics diagnostics) {
+        this.tokens = TokenCursor.of(source);
+        this.diagnostics = diagnostics;
+    }
 
     Parser(List<Token> tokens) {
-        this.tokens = tokens;
+        this(TokenSource.of(tokens));
+    }
+
+    // reads a compact TokenBuffer by index, only building Token objects for the nodes and errors that need one
+    Parser(TokenBuffer buffer) {
+        this(buffer, Diagnostics.CONSOLE);
+    }
+
+    Parser(TokenBuffer buffer, Diagnostics diagnostics) {
+        this.tokens = TokenCursor.of(buffer);
+        this.diagnostics = diagnostics;
     }
 
     /**
@@ -31,6 +60,20 @@ class Parser {
         return statements;
     }
 
+    // IncrementalParser parses the top-level declarations one at a time, to know where each one ends
+    Stmt nextDeclaration() {
+        return declaration();
+    }
+
+    boolean atEnd() {
+        return isAtEnd();
+    }
+
+    // how many tokens parse() went through, EOF included (so the same as the scanner's token list)
+    int tokenCount() {
+        return tokens.position() + 1;
+    }
+
     private Expr expression() {
         return comma();
     }
@@ -59,7 +102,8 @@ class Parser {
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect variable name.");
+        consume(IDENTIFIER, "Expect variable name.");
+        Token name = previous();
 
         Expr initializer = null;
         if (match(EQUAL)) {
@@ -207,7 +251,7 @@ class Parser {
         if (match(NIL)) return new Expr.Literal(null);
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(tokens.previousLiteral());
         }
 
         if (match(IDENTIFIER)) {
@@ -235,43 +279,45 @@ class Parser {
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
-    // consumes the current token and returns it
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    // consumes the current token
+    private void advance() {
+        if (!isAtEnd()) tokens.advance();
     }
 
     // checks if we have run out of tokens
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.peekType() == EOF;
     }
 
     // returns the current token we have yet to consume
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     // returns the most recently consumed token
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
     // The error() method returns the error instead of throwing it because we want to let the calling method inside the parser decide whether to unwind or not.
     // Some parse errors occur in places where the parser isn’t likely to get into a weird state and we don’t need to synchronize. In those places, we simply report the error and keep on truckin’.
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
-        return new ParseError();
+        diagnostics.error(token, message);
+        return PARSE_ERROR;
     }
 
     // The synchronize() method is called when we hit a parse error. It tries to find a place in the code where we can start parsing again.
@@ -282,9 +328,9 @@ class Parser {
         // we syncronize on statement boundaries, and we know that a statement ends with a semicolon or mostly start with a keyword.
         // When next token is any of those, we're prob about to start a statement
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
+            if (tokens.previousType() == SEMICOLON) return;
 
-            switch (peek().type) {
+            switch (tokens.peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -0,0 +1,138 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Interpreter used with `--profile`. Every evaluate()/execute() is counted and timed per syntax tree node,
+ * and report() prints the hot spots: the nodes and the source lines where the most time went.
+ *
+ * Times are kept two ways: total is everything from entering the node to leaving it (children included),
+ * self is total minus the time spent in its children, which is what points at the node that's actually slow.
+ * System.nanoTime() around every node isn't free, so absolute numbers come out higher than without profiling,
+ * but the proportions are what matter.
+ *
+ * Without --profile the plain Interpreter runs and none of this code is even loaded.
+ */
+class ProfilingInterpreter extends Interpreter {
+    private static final int TOP_NODES = 20;
+    private static final int TOP_LINES = 20;
+
+    private static final class Stats {
+        final String description;
+        final int line;
+        long count = 0;
+        long totalNanos = 0;
+        long selfNanos = 0;
+
+        Stats(String description, int line) {
+            this.description = description;
+            this.line = line;
+        }
+    }
+
+    // keyed by node identity, two identical-looking nodes on different lines are different hot spots
+    private final Map<Object, Stats> stats = new IdentityHashMap<>();
+    // time spent in the children of the node currently running
+    private long childNanos = 0;
+
+    ProfilingInterpreter(SymbolTable symbols, OutputSink out) {
+        super(symbols, out);
+    }
+
+    @Override
+    Object evaluate(Expr expr) {
+        Stats node = stats.get(expr);
+        if (node == null) {
+            node = new Stats(describe(expr), line(expr));
+            stats.put(expr, node);
+        }
+
+        long outerChildren = childNanos;
+        childNanos = 0;
+        long start = System.nanoTime();
+        try {
+            return super.evaluate(expr);
+        } finally {
+            childNanos = outerChildren + record(node, start);
+        }
+    }
+
+    @Override
+    void execute(Stmt stmt) {
+        Stats node = stats.get(stmt);
+        if (node == null) {
+            node = new Stats(describe(stmt), line(stmt));
+            stats.put(stmt, node);
+        }
+
+        long outerChildren = childNanos;
+        childNanos = 0;
+        long start = System.nanoTime();
+        try {
+            super.execute(stmt);
+        } finally {
+            childNanos = outerChildren + record(node, start);
+        }
+    }
+
+    // returns how long the node took, which counts as child time for whatever node is around it
+    private long record(Stats node, long start) {
+        long elapsed = System.nanoTime() - start;
+        node.count++;
+        node.totalNanos += elapsed;
+        node.selfNanos += elapsed - childNanos;
+        return elapsed;
+    }
+
+    void report(PrintStream out) {
+        List<Stats> nodes = new ArrayList<>(stats.values());
+        nodes.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+
+        out.println("[profile] hot nodes by self time");
+        out.println(String.format("%12s %12s %12s %6s  %s", "self ms", "total ms", "count", "line", "node"));
+        for (Stats node : nodes.subList(0, Math.min(TOP_NODES, nodes.size()))) {
+            out.println(String.format("%12.3f %12.3f %12d %6s  %s",
+                node.selfNanos / 1e6, node.totalNanos / 1e6, node.count, lineText(node.line), node.description));
+        }
+
+        // every node on a line adds its self time to the line, so the line totals add up to the whole run
+        Map<Integer, long[]> lines = new TreeMap<>();
+        for (Stats node : nodes) {
+            long[] line = lines.computeIfAbsent(node.line, key -> new long[2]);
+            line[0] += node.selfNanos;
+            line[1] += node.count;
+        }
+        List<Map.Entry<Integer, long[]>> hotLines = new ArrayList<>(lines.entrySet());
+        hotLines.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        out.println("[profile] hot lines by self time");
+        out.println(String.format("%12s %12s %6s", "self ms", "node runs", "line"));
+        for (Map.Entry<Integer, long[]> line : hotLines.subList(0, Math.min(TOP_LINES, hotLines.size()))) {
+            out.println(String.format("%12.3f %12d %6s",
+                line.getValue()[0] / 1e6, line.getValue()[1], lineText(line.getKey())));
+        }
+    }
+
+    private static String lineText(int line) {
+        return line > 0 ? Integer.toString(line) : "?";
+    }
+
+    private static String describe(Expr expr) {
+        if (expr instanceof Expr.Binary) return "Binary " + ((Expr.Binary) expr).operator.lexeme;
+        if (expr instanceof Expr.Unary) return "Unary " + ((Expr.Unary) expr).operator.lexeme;
+        if (expr instanceof Expr.Variable) return "Variable " + ((Expr.Variable) expr).name.lexeme;
+        if (expr instanceof Expr.Assign) return "Assign " + ((Expr.Assign) expr).name.lexeme;
+        if (expr instanceof Expr.Literal) return "Literal " + stringify(((Expr.Literal) expr).value);
+        return expr.getClass().getSimpleName();
+    }
+
+    private static String describe(Stmt stmt) {
+        if (stmt instanceof Stmt.Var) return "Var " + ((Stmt.Var) stmt).name.lexeme;
+        return stmt.getClass().getSimpleName();
+    }
+}
@@ -42,6 +42,17 @@ class RPNPrinter implements Expr.Visitor<String> {
         return expr.right.accept(this) + " " + operator;
     }
 
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        // x = 1 + 2 becomes 1 2 + x =
+        return expr.value.accept(this) + " " + expr.name.lexeme + " =";
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return expr.name.lexeme;
+    }
+
 
 
     /**
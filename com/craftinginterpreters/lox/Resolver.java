@@ -0,0 +1,164 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * A static pass that runs after the parser and before the interpreter.
+ * It walks the tree once and works out, for every local variable, which scope it lives in
+ * and its index (slot) inside that scope. The interpreter can then reach a local with
+ * (depth, slot) instead of hashing the name in every environment up the chain.
+ *
+ * Only block scopes are tracked here. Anything not found in a block scope is treated as a global:
+ * its depth stays -1 and its slot is the name's id in the interpreter's SymbolTable,
+ * the index of the global in the global Environment. Whether it is actually defined is only known at runtime
+ * (the REPL can define globals late).
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // each scope maps a variable name to its slot in that scope
+    private final Stack<Map<String, Integer>> scopes = new Stack<>();
+    private final SymbolTable symbols;
+
+    Resolver(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.push(new HashMap<String, Integer>());
+    }
+
+    private void endScope() {
+        scopes.pop();
+    }
+
+    /**
+     * Redeclaring a variable in the same block is allowed in our Lox (it just overwrites it),
+     * so a second `var a` in the same scope reuses the slot of the first one.
+     */
+    private int declare(Token name) {
+        Map<String, Integer> scope = scopes.peek();
+        Integer slot = scope.get(name.lexeme);
+        if (slot == null) {
+            slot = scope.size();
+            scope.put(name.lexeme, slot);
+        }
+        return slot;
+    }
+
+    // walks from the innermost scope outwards, the number of scopes we skip is the hop count the interpreter walks at runtime
+    private void resolveLocal(Expr expr, Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(name.lexeme);
+            if (slot != null) {
+                int depth = scopes.size() - 1 - i;
+                if (expr instanceof Expr.Variable) {
+                    ((Expr.Variable) expr).depth = depth;
+                    ((Expr.Variable) expr).slot = slot;
+                } else {
+                    ((Expr.Assign) expr).depth = depth;
+                    ((Expr.Assign) expr).slot = slot;
+                }
+                return;
+            }
+        }
+
+        // Not found. Assume it is global.
+        int symbol = symbols.intern(name.lexeme);
+        if (expr instanceof Expr.Variable) {
+            ((Expr.Variable) expr).slot = symbol;
+        } else {
+            ((Expr.Assign) expr).slot = symbol;
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        resolve(stmt.statements);
+        stmt.slotCount = scopes.peek().size();
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // The initializer is resolved before the name is declared, so in `var a = a + 2;`
+        // the `a` on the right still refers to the outer `a` (see the chapter 8 notes in the README).
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+
+        if (scopes.isEmpty()) {
+            stmt.slot = symbols.intern(stmt.name.lexeme);
+            return null;
+        }
+
+        stmt.slot = declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+        resolveLocal(expr, expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        resolveLocal(expr, expr.name);
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+
+/**
+ * A Lox string built by concatenation. `+` on two strings used to copy both sides into a new String,
+ * so building a string up piece by piece copied everything built so far on every step (quadratic).
+ * A Rope just remembers its two halves, and the characters are only copied once, into one flat String,
+ * the first time something needs them: printing, comparing with `==`, hashing.
+ *
+ * Lox string values are therefore either a java.lang.String or a Rope. isString() tells whether a value is one,
+ * toString() always gives the flat text. Short results are still concatenated right away,
+ * a Rope node costs more than copying a few characters.
+ */
+final class Rope implements CharSequence {
+    // results up to this many chars are plain Strings
+    private static final int FLAT_LIMIT = 64;
+
+    private final int length;
+    // each half is a String or a Rope, both are dropped once the rope is flattened
+    private Object left;
+    private Object right;
+    private String flat = null;
+
+    private Rope(Object left, Object right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    // both have to be strings (see isString)
+    static Object concat(Object left, Object right) {
+        int leftLength = ((CharSequence) left).length();
+        int rightLength = ((CharSequence) right).length();
+        if (leftLength == 0) return right;
+        if (rightLength == 0) return left;
+
+        int length = leftLength + rightLength;
+        if (length <= FLAT_LIMIT) return left.toString().concat(right.toString());
+        if (length < 0) throw new OutOfMemoryError("Lox string too long");
+
+        return new Rope(left, right, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Flattens the rope the first time it's asked for. The tree can be as deep as the number of concatenations
+     * (a loop appending to one variable builds one long left spine), so this walks it with an explicit stack
+     * instead of recursing.
+     */
+    @Override
+    public String toString() {
+        if (flat != null) return flat;
+
+        char[] chars = new char[length];
+        int position = 0;
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(this);
+
+        while (!pending.isEmpty()) {
+            Object node = pending.pop();
+            if (node instanceof Rope && ((Rope) node).flat == null) {
+                Rope rope = (Rope) node;
+                // left has to come out first, so it goes on top
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                String text = node.toString();
+                text.getChars(0, text.length(), chars, position);
+                position += text.length();
+            }
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+
+    // equal to another Rope with the same text; comparing with a plain String is Interpreter.isEqual's job
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Rope && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
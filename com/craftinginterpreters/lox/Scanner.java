@@ -1,55 +1,100 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 import static com.craftinginterpreters.lox.TokenType.*; 
 
-class Scanner {
+class Scanner implements TokenSource {
     private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final Diagnostics diagnostics;
+    // this scan's constant table, equal number literals share one boxed value
+    private final NumberLiterals numbers = new NumberLiterals();
+    // the token the last scanToken() call produced, whitespace and comments don't produce one
+    private Token scanned = null;
+    // set while scanCompact() runs, tokens then go into the buffer instead of becoming Token objects
+    private TokenBuffer buffer = null;
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // the line `start` is on, a multi-line string's token gets the line it ends on instead
+    private int startLine = 1;
 
-    private static final Map<String, TokenType> keywords;
-
-    static  {
-        keywords = new HashMap<>();
-        keywords.put("and",    AND);
-        keywords.put("class",  CLASS);
-        keywords.put("else",   ELSE);
-        keywords.put("false",  FALSE);
-        keywords.put("for",    FOR);
-        keywords.put("fun",    FUN);
-        keywords.put("if",     IF);
-        keywords.put("nil",    NIL);
-        keywords.put("or",     OR);
-        keywords.put("print",  PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super",  SUPER);
-        keywords.put("this",   THIS);
-        keywords.put("true",   TRUE);
-        keywords.put("var",    VAR);
-        keywords.put("while",  WHILE);
+    Scanner(String source) {
+        this(source, Diagnostics.CONSOLE);
     }
 
-    Scanner(String source) {
+    Scanner(String source, Diagnostics diagnostics) {
         this.source = source;
+        this.diagnostics = diagnostics;
+    }
+
+    // starts scanning part way into the source, `offset` has to be where a token (or whitespace/comment) begins
+    // and `line` the line it's on. IncrementalParser uses this to rescan only what an edit touched
+    Scanner(String source, int offset, int line, Diagnostics diagnostics) {
+        this(source, diagnostics);
+        this.current = offset;
+        this.line = line;
+    }
+
+    // where the token nextToken() just returned starts in the source, and on which line
+    int tokenStart() {
+        return start;
+    }
+
+    int tokenLine() {
+        return startLine;
     }
 
+    // the whole token list in one go, kept for code that wants all of them up front
     List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != EOF);
+
+        return tokens;
+    }
+
+    // scans everything into a compact TokenBuffer, without building a Token object per token
+    TokenBuffer scanCompact() {
+        buffer = new TokenBuffer(source);
+
+        while(!isAtEnd()) {
+            start = current;
+            scanToken();
+        }
+
+        buffer.add(EOF, current, 0, line, null);
+        return buffer;
+    }
+
+    /**
+     * Scans just far enough to produce the next token. The Parser pulls tokens through this,
+     * so only the tokens it is currently looking at are alive, not the whole list.
+     */
+    @Override
+    public Token nextToken() {
         while(!isAtEnd()) {
             // at the beginning of the next lexeme
             start = current;
+            startLine = line;
             scanToken();
+
+            if (scanned != null) {
+                Token token = scanned;
+                scanned = null;
+                return token;
+            }
         }
 
-        tokens.add(new Token(EOF, "", null, line)); // "end of file" token
-        return tokens;
+        start = current;
+        startLine = line;
+        return new Token(EOF, "", null, line); // "end of file" token
     }
 
     private boolean isAtEnd() {
@@ -65,8 +110,13 @@ class Scanner {
     }
     
     private void addToken(TokenType type, Object literal) {
+        if (buffer != null) {
+            buffer.add(type, start, current - start, line, literal);
+            return;
+        }
+
         String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        scanned = new Token(type, text, literal, line);
     }
 
     private void scanToken() {
@@ -121,7 +171,7 @@ class Scanner {
                     }
                     
                     if(nesting_level > 0) {
-                        Lox.error(line, "Unterminated block comment");
+                        diagnostics.error(line, "Unterminated block comment");
                     }
                 } else {
                     addToken(SLASH);
@@ -150,7 +200,7 @@ class Scanner {
                 } else if(isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    diagnostics.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -159,12 +209,16 @@ class Scanner {
     private void identifier() {
         // maximal munch: When two lexical grammar rules can both match a chunk of code that the scanner is looking at, whichever one matches the most characters wins.
         while(isAlphaNumeric(peek())) advance();
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
+        TokenType type = keyword();
         if(type == null) type = IDENTIFIER;
         addToken(type);
     }
 
+    // walks the keyword trie over the lexeme in place, so identifiers don't need a substring just for the lookup
+    private TokenType keyword() {
+        return Keywords.lookup(source, start, current);
+    }
+
     private boolean isAlpha(char c) {
         return (c >= 'a' && c <= 'z') ||
             (c >= 'A' && c <= 'Z') ||
@@ -186,8 +240,7 @@ class Scanner {
             while(isDigit(peek())) advance(); // continue with the numbers
         }
 
-        addToken(NUMBER,
-            Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER, numbers.intern(NumberLiterals.parse(source, start, current)));
     }
 
     private void string() {
@@ -197,7 +250,7 @@ class Scanner {
         }
 
         if(isAtEnd()) {
-            Lox.error(line, "Unterminated String");
+            diagnostics.error(line, "Unterminated String");
             return;
         }
 
@@ -21,6 +21,7 @@ abstract class Stmt {
         }
 
         final List<Stmt> statements;
+        int slotCount;
     }
 
     static class Expression extends Stmt {
@@ -62,6 +63,7 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        int slot = -1;
     }
 
 
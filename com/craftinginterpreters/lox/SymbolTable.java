@@ -0,0 +1,36 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns global variable names into small integer ids. The Resolver gives every global it sees an id,
+ * and the global Environment stores values in an array indexed by that id, so running code never hashes a name.
+ *
+ * One table lives as long as its interpreter, so in the REPL a name keeps the same id across lines
+ * and a global defined on a later line is still found by code resolved earlier.
+ */
+class SymbolTable {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    String name(int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,93 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * A compact, struct-of-arrays list of tokens. Instead of one Token object per token (with its own substring lexeme),
+ * every token is four ints spread over parallel arrays: its type, where its lexeme starts in the source,
+ * how long it is and which line it's on. The few tokens that carry a literal (numbers and strings)
+ * also get an entry in a side table.
+ *
+ * The Parser reads it by index and only asks for a real Token (see token()) when it needs one,
+ * for an error message or for an AST node that keeps the token around.
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final String source;
+    private int[] types = new int[1024];
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private int[] lines = new int[1024];
+    private int count = 0;
+
+    // the side table: literalTokens holds the (ascending) indexes of the tokens that have literals, literals their values
+    private int[] literalTokens = new int[64];
+    private Object[] literals = new Object[64];
+    private int literalCount = 0;
+
+    TokenBuffer(String source) {
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line, Object literal) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+
+        types[count] = type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+
+        if (literal != null) {
+            if (literalCount == literals.length) {
+                literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+                literals = Arrays.copyOf(literals, literalCount * 2);
+            }
+            literalTokens[literalCount] = count;
+            literals[literalCount] = literal;
+            literalCount++;
+        }
+
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    Object literal(int index) {
+        int found = Arrays.binarySearch(literalTokens, 0, literalCount, index);
+        return found >= 0 ? literals[found] : null;
+    }
+
+    String lexeme(int index) {
+        return source.substring(starts[index], starts[index] + lengths[index]);
+    }
+
+    // builds the Token object for one entry, only done when somebody really needs one
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), lines[index]);
+    }
+}
@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * How the Parser walks through tokens: the one it is about to consume (peek) and the one it just consumed (previous).
+ * The type and literal accessors let it make every decision without needing a Token object,
+ * peek() and previous() hand out a real Token for the cases that keep one (AST nodes, error messages).
+ */
+interface TokenCursor {
+    TokenType peekType();
+    TokenType previousType();
+    Object previousLiteral();
+    Token peek();
+    Token previous();
+    void advance();
+    // how many tokens have been consumed, i.e. the index of the one peek() returns
+    int position();
+
+    // pulls tokens from a TokenSource (like the Scanner) one at a time, keeping only the last two
+    static TokenCursor of(TokenSource source) {
+        return new TokenCursor() {
+            private Token current = source.nextToken();
+            private Token previous = null;
+            private int position = 0;
+
+            @Override public TokenType peekType() { return current.type; }
+            @Override public TokenType previousType() { return previous.type; }
+            @Override public Object previousLiteral() { return previous.literal; }
+            @Override public Token peek() { return current; }
+            @Override public Token previous() { return previous; }
+
+            @Override
+            public void advance() {
+                previous = current;
+                current = source.nextToken();
+                position++;
+            }
+
+            @Override public int position() { return position; }
+        };
+    }
+
+    // reads a TokenBuffer by index, Tokens are only built when asked for
+    static TokenCursor of(TokenBuffer buffer) {
+        return new TokenCursor() {
+            private int current = 0;
+
+            @Override public TokenType peekType() { return buffer.type(current); }
+            @Override public TokenType previousType() { return buffer.type(current - 1); }
+            @Override public Object previousLiteral() { return buffer.literal(current - 1); }
+            @Override public Token peek() { return buffer.token(current); }
+            @Override public Token previous() { return buffer.token(current - 1); }
+            @Override public void advance() { current++; }
+            @Override public int position() { return current; }
+        };
+    }
+}
@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Anything the Parser can pull tokens from, one at a time.
+ * The Scanner is one, so the parser can ask for tokens as it needs them instead of waiting
+ * for the whole token list to be built.
+ */
+interface TokenSource {
+    // returns the next token. The last one is always EOF and nobody asks past it
+    Token nextToken();
+
+    // for code that already has the whole list of tokens
+    static TokenSource of(List<Token> tokens) {
+        Iterator<Token> iterator = tokens.iterator();
+        return iterator::next;
+    }
+}
@@ -0,0 +1,266 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * A Scanner that works on the raw UTF-8 bytes of a script instead of a String,
+ * so Lox.runFile can memory-map the file and scan it in place without ever copying it onto the heap.
+ *
+ * It produces exactly the same tokens and errors as Scanner. Everything Lox cares about outside of
+ * strings and comments is ASCII, so most of it works byte by byte. Lexemes are only decoded where we
+ * need the text: identifiers, numbers and strings. Punctuation and keywords reuse constant lexemes.
+ */
+class Utf8Scanner implements TokenSource {
+    private final ByteBuffer source;
+    private final int length;
+    private final Diagnostics diagnostics;
+    private final NumberLiterals numbers = new NumberLiterals();
+    private Token scanned = null;
+    private int start = 0;
+    private int current = 0;
+    private int line = 1;
+
+    // the lexemes for every token whose text is always the same
+    private static final String[] FIXED_LEXEMES = new String[TokenType.values().length];
+
+    static {
+        String[][] lexemes = {
+            {"LEFT_PAREN", "("}, {"RIGHT_PAREN", ")"}, {"LEFT_BRACE", "{"}, {"RIGHT_BRACE", "}"},
+            {"COMMA", ","}, {"DOT", "."}, {"MINUS", "-"}, {"PLUS", "+"}, {"SEMICOLON", ";"},
+            {"SLASH", "/"}, {"STAR", "*"}, {"BANG", "!"}, {"BANG_EQUAL", "!="}, {"EQUAL", "="},
+            {"EQUAL_EQUAL", "=="}, {"GREATER", ">"}, {"GREATER_EQUAL", ">="}, {"LESS", "<"},
+            {"LESS_EQUAL", "<="}, {"AND", "and"}, {"CLASS", "class"}, {"ELSE", "else"},
+            {"FALSE", "false"}, {"FUN", "fun"}, {"FOR", "for"}, {"IF", "if"}, {"NIL", "nil"},
+            {"OR", "or"}, {"PRINT", "print"}, {"RETURN", "return"}, {"SUPER", "super"},
+            {"THIS", "this"}, {"TRUE", "true"}, {"VAR", "var"}, {"WHILE", "while"},
+        };
+
+        for (String[] lexeme : lexemes) {
+            FIXED_LEXEMES[TokenType.valueOf(lexeme[0]).ordinal()] = lexeme[1];
+        }
+    }
+
+    Utf8Scanner(ByteBuffer source) {
+        this(source, Diagnostics.CONSOLE);
+    }
+
+    Utf8Scanner(ByteBuffer source, Diagnostics diagnostics) {
+        this.source = source;
+        this.length = source.limit();
+        this.diagnostics = diagnostics;
+    }
+
+    @Override
+    public Token nextToken() {
+        while(!isAtEnd()) {
+            start = current;
+            scanToken();
+
+            if (scanned != null) {
+                Token token = scanned;
+                scanned = null;
+                return token;
+            }
+        }
+
+        return new Token(EOF, "", null, line);
+    }
+
+    private boolean isAtEnd() {
+        return current >= length;
+    }
+
+    private int advance() {
+        return source.get(current++) & 0xff;
+    }
+
+    private void addToken(TokenType type) {
+        scanned = new Token(type, FIXED_LEXEMES[type.ordinal()], null, line);
+    }
+
+    private void addToken(TokenType type, String text, Object literal) {
+        scanned = new Token(type, text, literal, line);
+    }
+
+    private void scanToken() {
+        int c = advance();
+
+        switch(c) {
+            case '(': addToken(LEFT_PAREN); break;
+            case ')': addToken(RIGHT_PAREN); break;
+            case '{': addToken(LEFT_BRACE); break;
+            case '}': addToken(RIGHT_BRACE); break;
+            case ',': addToken(COMMA); break;
+            case '.': addToken(DOT); break;
+            case '-': addToken(MINUS); break;
+            case '+': addToken(PLUS); break;
+            case ';': addToken(SEMICOLON); break;
+            case '*': addToken(STAR); break;
+
+            case '!': addToken(match('=') ? BANG_EQUAL : BANG); break;
+            case '=': addToken(match('=') ? EQUAL_EQUAL : EQUAL); break;
+            case '<': addToken(match('=') ? LESS_EQUAL : LESS); break;
+            case '>': addToken(match('=') ? GREATER_EQUAL : GREATER); break;
+            case '/':
+                if(match('/')) {
+                    while(peek() != '\n' && !isAtEnd()) advance();
+                } else if(match('*')) {
+                    // nested block comments, same as in Scanner
+                    int nesting_level = 1;
+                    while(nesting_level > 0 && !isAtEnd()) {
+                        if(peek() == '/' && peekNext() == '*') {
+                            nesting_level++;
+                            current += 2;
+                        } else if (peek() == '*' && peekNext() == '/') {
+                            nesting_level--;
+                            current += 2;
+                        } else {
+                            if(peek() == '\n') line++;
+                            advance();
+                        }
+                    }
+
+                    if(nesting_level > 0) {
+                        diagnostics.error(line, "Unterminated block comment");
+                    }
+                } else {
+                    addToken(SLASH);
+                }
+                break;
+
+            case ' ':
+            case '\r':
+            case '\t':
+                break;
+
+            case '\n':
+                line++;
+                break;
+
+            case '"':
+                string();
+                break;
+
+            default:
+                if(isDigit(c)) {
+                    number();
+                } else if(isAlpha(c)) {
+                    identifier();
+                } else {
+                    unexpectedCharacter(c);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Scanner works on UTF-16 chars and reports one error per char, so a character outside of a string
+     * gets one error, or two if it needs a surrogate pair (4 byte sequences). We skip the rest of the sequence here.
+     */
+    private void unexpectedCharacter(int lead) {
+        int continuation = 0;
+        if ((lead & 0xe0) == 0xc0) continuation = 1;
+        else if ((lead & 0xf0) == 0xe0) continuation = 2;
+        else if ((lead & 0xf8) == 0xf0) continuation = 3;
+
+        for (int i = 0; i < continuation && !isAtEnd() && (peek() & 0xc0) == 0x80; i++) {
+            advance();
+        }
+
+        diagnostics.error(line, "Unexpected character.");
+        if (continuation == 3) diagnostics.error(line, "Unexpected character.");
+    }
+
+    private void identifier() {
+        while(isAlphaNumeric(peek())) advance();
+
+        TokenType keyword = keyword();
+        if (keyword != null) {
+            addToken(keyword);
+        } else {
+            addToken(IDENTIFIER, ascii(start, current), null);
+        }
+    }
+
+    // walks the keyword trie over the bytes in place, so keywords never allocate a String
+    private TokenType keyword() {
+        return Keywords.lookup(source, start, current);
+    }
+
+    private void number() {
+        while(isDigit(peek())) advance();
+
+        if(peek() == '.' && isDigit(peekNext())) {
+            advance();
+            while(isDigit(peek())) advance();
+        }
+
+        String text = ascii(start, current);
+        addToken(NUMBER, text, numbers.intern(NumberLiterals.parse(text, 0, text.length())));
+    }
+
+    private void string() {
+        while(peek() != '"' && !isAtEnd())  {
+            if(peek() == '\n') line++;
+            advance();
+        }
+
+        if(isAtEnd()) {
+            diagnostics.error(line, "Unterminated String");
+            return;
+        }
+
+        advance(); // the closing '"'
+
+        String value = utf8(start + 1, current - 1);
+        addToken(STRING, "\"" + value + "\"", value);
+    }
+
+    // identifiers and numbers are plain ASCII, which is a straight byte-to-char copy
+    private String ascii(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        source.get(from, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private String utf8(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        source.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean isAlpha(int c) {
+        return (c >= 'a' && c <= 'z') ||
+            (c >= 'A' && c <= 'Z') ||
+            c == '_';
+    }
+
+    private boolean isAlphaNumeric(int c) {
+        return isAlpha(c) || isDigit(c);
+    }
+
+    private boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private boolean match(char expected) {
+        if (isAtEnd()) return false;
+        if(source.get(current) != expected) return false;
+
+        current++;
+        return true;
+    }
+
+    private int peek() {
+        if (isAtEnd()) return '\0';
+        return source.get(current) & 0xff;
+    }
+
+    private int peekNext() {
+        if(current + 1 >= length) return '\0';
+        return source.get(current + 1) & 0xff;
+    }
+}
@@ -0,0 +1,235 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * A stack based virtual machine that runs the Chunks the Compiler produces.
+ * It is the second execution engine next to the tree-walking Interpreter and has to behave exactly like it,
+ * so it reuses the Interpreter's stringify/isEqual/isTruthy and the same error messages.
+ *
+ * Like the interpreter in Lox, one VM is kept for the whole REPL session so globals survive between lines.
+ */
+class VM {
+    // globals are indexed by the symbol id the Resolver gave their name, like in the Interpreter's global Environment
+    final SymbolTable symbols;
+    private Object[] globals = new Object[64];
+    // where `print` goes
+    private final OutputSink out;
+
+    // marks a global slot that was never defined with `var`
+    private static final Object UNDEFINED = new Object() {
+        @Override
+        public String toString() {
+            return "UNDEFINED";
+        }
+    };
+
+    VM() {
+        this(new SymbolTable());
+    }
+
+    VM(SymbolTable symbols) {
+        this(symbols, OutputSink.STDOUT);
+    }
+
+    VM(SymbolTable symbols, OutputSink out) {
+        this.symbols = symbols;
+        this.out = out;
+        Arrays.fill(globals, UNDEFINED);
+    }
+
+    void interpret(Chunk chunk) {
+        try {
+            run(chunk);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    // returns whatever is left on top of the stack, which is the value of the expression for compileExpression() chunks
+    Object run(Chunk chunk) {
+        byte[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        Object[] stack = new Object[chunk.maxStack + 1];
+        Object[] locals = new Object[chunk.localCount];
+        int sp = 0;
+        int ip = 0;
+
+        for (;;) {
+            int offset = ip;
+            switch (code[ip++]) {
+                case OpCode.CONSTANT:
+                    stack[sp++] = constants[chunk.readShort(ip)];
+                    ip += 2;
+                    break;
+                case OpCode.NIL: stack[sp++] = null; break;
+                case OpCode.TRUE: stack[sp++] = true; break;
+                case OpCode.FALSE: stack[sp++] = false; break;
+                case OpCode.POP: sp--; break;
+
+                case OpCode.GET_LOCAL: {
+                    Object value = locals[chunk.readShort(ip)];
+                    if (value == Environment.UNINITIALIZED) {
+                        String name = (String) constants[chunk.readShort(ip + 2)];
+                        throw error(chunk, offset, "Variable '" + name + "' used before initialization.");
+                    }
+                    stack[sp++] = value;
+                    ip += 4;
+                    break;
+                }
+                case OpCode.SET_LOCAL:
+                    // assignment is an expression, so the value stays on the stack
+                    locals[chunk.readShort(ip)] = stack[sp - 1];
+                    ip += 2;
+                    break;
+                case OpCode.DEFINE_LOCAL:
+                    locals[chunk.readShort(ip)] = stack[--sp];
+                    ip += 2;
+                    break;
+                case OpCode.DEFINE_LOCAL_UNINIT:
+                    locals[chunk.readShort(ip)] = Environment.UNINITIALIZED;
+                    ip += 2;
+                    break;
+
+                case OpCode.GET_GLOBAL: {
+                    int symbol = chunk.readShort(ip);
+                    Object value = symbol < globals.length ? globals[symbol] : UNDEFINED;
+                    if (value == UNDEFINED) {
+                        throw error(chunk, offset, "Undefined variable '" + symbols.name(symbol) + "'.");
+                    }
+                    if (value == Environment.UNINITIALIZED) {
+                        throw error(chunk, offset, "Variable '" + symbols.name(symbol) + "' used before initialization.");
+                    }
+                    stack[sp++] = value;
+                    ip += 2;
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int symbol = chunk.readShort(ip);
+                    if (symbol >= globals.length || globals[symbol] == UNDEFINED) {
+                        throw error(chunk, offset, "Undefined variable '" + symbols.name(symbol) + "'.");
+                    }
+                    globals[symbol] = stack[sp - 1];
+                    ip += 2;
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL:
+                    defineGlobal(chunk.readShort(ip), stack[--sp]);
+                    ip += 2;
+                    break;
+                case OpCode.DEFINE_GLOBAL_UNINIT:
+                    defineGlobal(chunk.readShort(ip), Environment.UNINITIALIZED);
+                    ip += 2;
+                    break;
+
+                case OpCode.EQUAL: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], b);
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], b);
+                    break;
+                }
+                case OpCode.GREATER: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(chunk, offset, a, b);
+                    stack[sp - 1] = (double) a > (double) b;
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(chunk, offset, a, b);
+                    stack[sp - 1] = (double) a >= (double) b;
+                    break;
+                }
+                case OpCode.LESS: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(chunk, offset, a, b);
+                    stack[sp - 1] = (double) a < (double) b;
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(chunk, offset, a, b);
+                    stack[sp - 1] = (double) a <= (double) b;
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    if (a instanceof Double && b instanceof Double) {
+                        stack[sp - 1] = (double) a + (double) b;
+                    } else if (Rope.isString(a) && Rope.isString(b)) {
+                        stack[sp - 1] = Rope.concat(a, b);
+                    } else {
+                        throw error(chunk, offset, "Operands must be two numbers or two strings.");
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(chunk, offset, a, b);
+                    stack[sp - 1] = (double) a - (double) b;
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(chunk, offset, a, b);
+                    stack[sp - 1] = (double) a * (double) b;
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    checkNumberOperands(chunk, offset, a, b);
+                    stack[sp - 1] = (double) a / (double) b;
+                    break;
+                }
+                case OpCode.NOT:
+                    stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+                    break;
+                case OpCode.NEGATE:
+                    if (!(stack[sp - 1] instanceof Double)) {
+                        throw error(chunk, offset, "Operand must be a number.");
+                    }
+                    stack[sp - 1] = -(double) stack[sp - 1];
+                    break;
+
+                case OpCode.PRINT:
+                    Interpreter.print(out, stack[--sp]);
+                    break;
+                case OpCode.RETURN:
+                    return sp > 0 ? stack[sp - 1] : null;
+            }
+        }
+    }
+
+    // the REPL can keep defining new globals, so the array grows to fit
+    private void defineGlobal(int symbol, Object value) {
+        if (symbol >= globals.length) {
+            int size = globals.length;
+            globals = Arrays.copyOf(globals, Math.max(size * 2, symbol + 1));
+            Arrays.fill(globals, size, globals.length, UNDEFINED);
+        }
+        globals[symbol] = value;
+    }
+
+    private void checkNumberOperands(Chunk chunk, int offset, Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) return;
+
+        throw error(chunk, offset, "Operands must be numbers.");
+    }
+
+    // the VM only keeps line numbers around, which is all Lox.runtimeError() reports anyway
+    private RuntimeError error(Chunk chunk, int offset, String message) {
+        return new RuntimeError(new Token(TokenType.EOF, "", null, chunk.lines[offset]), message);
+    }
+}
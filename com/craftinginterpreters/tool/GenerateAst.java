@@ -20,21 +20,26 @@ public class GenerateAst {
         }
         String outputDir = args[0];
 
-        defineAst(outputDir, "Expr", Arrays.asList(
-            "Assign   : Token name, Expr value",
-            "Binary   : Expr left, Token operator, Expr right",
+        List<String> exprTypes = Arrays.asList(
+            "Assign   : Token name, Expr value | int depth = -1, int slot",
+            "Binary   : Expr left, Token operator, Expr right | BinaryNode specialization",
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Unary    : Token operator, Expr right",
-            "Variable : Token name"
-        ));
+            "Variable : Token name | int depth = -1, int slot"
+        );
 
-        defineAst(outputDir, "Stmt", Arrays.asList(     
-            "Block      : List<Stmt> statements",      
+        List<String> stmtTypes = Arrays.asList(
+            "Block      : List<Stmt> statements | int slotCount",    
             "Expression : Expr expression",
             "Print      : Expr expression",
-            "Var        : Token name, Expr initializer"
-        ));
+            "Var        : Token name, Expr initializer | int slot = -1"
+        );
+
+        // expressions also get a visitor that returns primitives, for NanBoxInterpreter
+        defineAst(outputDir, "Expr", exprTypes, true);
+        defineAst(outputDir, "Stmt", stmtTypes, false);
+        defineCodec(outputDir, exprTypes, stmtTypes);
     };
 
     /**
@@ -42,10 +47,11 @@ public class GenerateAst {
      * @param outputDir
      * @param baseName
      * @param types
+     * @param longVisitor also write a LongVisitor, whose methods return a long instead of an object
      * @throws IOException
      */
     private static void defineAst(
-        String outputDir, String baseName, List<String> types
+        String outputDir, String baseName, List<String> types, boolean longVisitor
     ) throws IOException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, "UTF-8");
@@ -57,18 +63,20 @@ public class GenerateAst {
         writer.println("abstract class " + baseName + " {");
 
         defineVisitor(writer, baseName, types);
+        if (longVisitor) defineLongVisitor(writer, baseName, types);
 
         // defining the base class inside each subclass
         for(String type: types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
 
-            defineType(writer, baseName, className, fields);
+            defineType(writer, baseName, className, fields, longVisitor);
         }
 
         // the base accept() method
         writer.println();
         writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        if (longVisitor) writer.println("    abstract long acceptLong(LongVisitor visitor);");
 
         writer.println("}");
         writer.close();
@@ -93,20 +101,47 @@ public class GenerateAst {
         writer.println("    }");
         writer.println();
     }
+
+    /**
+     * Like the Visitor, but every method returns a long, so a value can come back without being boxed
+     * (NanBoxInterpreter packs every Lox value into one).
+     * @param writer
+     * @param baseName
+     * @param types
+     */
+    private static void defineLongVisitor(
+        PrintWriter writer, String baseName, List<String> types) {
+        writer.println("    interface LongVisitor {");
+
+        for(String type: types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("      long visit" + typeName + baseName + "(" +
+                typeName + " " + baseName.toLowerCase() + ");");
+        }
+
+        writer.println("    }");
+        writer.println();
+    }
     
 
     /**
      * It declares each field in the class body. 
      * It defines a constructor for the class with parameters for each field and initializes them in the body
+     * Anything after a '|' in the field list is a mutable field that a later pass (like the Resolver) fills in,
+     * so it is left out of the constructor and is not final.
      * @param writer
      * @param baseName
      * @param className
      * @param fieldList
+     * @param longVisitor also write acceptLong()
      */
     private static void defineType(
         PrintWriter writer, String baseName,
-        String className, String fieldList
+        String className, String fieldList, boolean longVisitor
     ) {
+        String[] parts = fieldList.split("\\|");
+        fieldList = parts[0].trim();
+
         writer.println("    static class " + className + " extends " + baseName + " {");
 
       
@@ -128,14 +163,204 @@ public class GenerateAst {
         writer.println("          return visitor.visit" + className + baseName + "(this);");
         writer.println("        }");
 
+        if (longVisitor) {
+            writer.println();
+            writer.println("        @Override");
+            writer.println("        long acceptLong(LongVisitor visitor) {");
+            writer.println("          return visitor.visit" + className + baseName + "(this);");
+            writer.println("        }");
+        }
+
         // Fields.
         writer.println();
         for (String field : fields) {
         writer.println("        final " + field + ";");
         }
 
+        if (parts.length > 1) {
+            for (String field : parts[1].trim().split(", ")) {
+                writer.println("        " + field + ";");
+            }
+        }
+
         writer.println("    }");
         writer.println();
     }
     
+
+    /**
+     * Writes AstCodec, which turns Expr/Stmt trees into a compact binary form and back (used by AstCache).
+     * Every node is a one byte tag (its position in the type list, 0 is null) followed by its constructor fields in order,
+     * so reading a node is just calling its constructor with the fields read back.
+     * Mutable fields (after the '|') belong to later passes and are not written.
+     * SCHEMA is a hash of the type descriptions, so changing a node invalidates anything written with the old layout.
+     * @param outputDir
+     * @param exprTypes
+     * @param stmtTypes
+     * @throws IOException
+     */
+    private static void defineCodec(
+        String outputDir, List<String> exprTypes, List<String> stmtTypes
+    ) throws IOException {
+        String path = outputDir + "/AstCodec.java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package com.craftinginterpreters.lox;");
+        writer.println();
+        writer.println("import java.io.DataInput;");
+        writer.println("import java.io.DataOutput;");
+        writer.println("import java.io.IOException;");
+        writer.println("import java.nio.charset.StandardCharsets;");
+        writer.println("import java.util.ArrayList;");
+        writer.println("import java.util.List;");
+        writer.println();
+        writer.println("// generated by tool/GenerateAst, together with Expr and Stmt");
+        writer.println("class AstCodec {");
+        writer.println("    static final int SCHEMA = " + (exprTypes.toString() + stmtTypes.toString()).hashCode() + ";");
+        writer.println();
+        writer.println("    private static final TokenType[] TOKEN_TYPES = TokenType.values();");
+        writer.println();
+
+        defineWriter(writer, "Expr", exprTypes);
+        defineReader(writer, "Expr", exprTypes);
+        defineWriter(writer, "Stmt", stmtTypes);
+        defineReader(writer, "Stmt", stmtTypes);
+
+        // the leaves: statement lists, tokens, literal values and strings
+        writer.println("    static void writeStmts(DataOutput out, List<Stmt> statements) throws IOException {");
+        writer.println("        out.writeInt(statements.size());");
+        writer.println("        for (Stmt statement : statements) writeStmt(out, statement);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    static List<Stmt> readStmts(DataInput in) throws IOException {");
+        writer.println("        int size = in.readInt();");
+        writer.println("        if (size < 0) throw new IOException(\"Bad statement count \" + size);");
+        writer.println("        List<Stmt> statements = new ArrayList<>(Math.min(size, 1024));");
+        writer.println("        for (int i = 0; i < size; i++) statements.add(readStmt(in));");
+        writer.println("        return statements;");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static void writeToken(DataOutput out, Token token) throws IOException {");
+        writer.println("        out.writeByte(token.type.ordinal());");
+        writer.println("        writeString(out, token.lexeme);");
+        writer.println("        writeObject(out, token.literal);");
+        writer.println("        out.writeInt(token.line);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static Token readToken(DataInput in) throws IOException {");
+        writer.println("        int type = in.readUnsignedByte();");
+        writer.println("        if (type >= TOKEN_TYPES.length) throw new IOException(\"Bad token type \" + type);");
+        writer.println("        return new Token(TOKEN_TYPES[type], readString(in), readObject(in), in.readInt());");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // literals are only ever nil, booleans, numbers and strings");
+        writer.println("    private static void writeObject(DataOutput out, Object value) throws IOException {");
+        writer.println("        if (value == null) {");
+        writer.println("            out.writeByte(0);");
+        writer.println("        } else if (value instanceof Boolean) {");
+        writer.println("            out.writeByte((Boolean) value ? 2 : 1);");
+        writer.println("        } else if (value instanceof Double) {");
+        writer.println("            out.writeByte(3);");
+        writer.println("            out.writeDouble((Double) value);");
+        writer.println("        } else if (value instanceof String) {");
+        writer.println("            out.writeByte(4);");
+        writer.println("            writeString(out, (String) value);");
+        writer.println("        } else {");
+        writer.println("            throw new IllegalArgumentException(\"Can't write literal of type \" + value.getClass().getName());");
+        writer.println("        }");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static Object readObject(DataInput in) throws IOException {");
+        writer.println("        int tag = in.readUnsignedByte();");
+        writer.println("        switch (tag) {");
+        writer.println("            case 0: return null;");
+        writer.println("            case 1: return false;");
+        writer.println("            case 2: return true;");
+        writer.println("            case 3: return in.readDouble();");
+        writer.println("            case 4: return readString(in);");
+        writer.println("            default: throw new IOException(\"Bad literal tag \" + tag);");
+        writer.println("        }");
+        writer.println("    }");
+        writer.println();
+        writer.println("    // not DataOutput.writeUTF, that one stops at 64KB and string literals can be longer");
+        writer.println("    private static void writeString(DataOutput out, String text) throws IOException {");
+        writer.println("        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);");
+        writer.println("        out.writeInt(bytes.length);");
+        writer.println("        out.write(bytes);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    private static String readString(DataInput in) throws IOException {");
+        writer.println("        int length = in.readInt();");
+        writer.println("        if (length < 0) throw new IOException(\"Bad string length \" + length);");
+        writer.println("        byte[] bytes = new byte[length];");
+        writer.println("        in.readFully(bytes);");
+        writer.println("        return new String(bytes, StandardCharsets.UTF_8);");
+        writer.println("    }");
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineWriter(PrintWriter writer, String baseName, List<String> types) {
+        String var = baseName.toLowerCase();
+        writer.println("    static void write" + baseName + "(DataOutput out, " + baseName + " " + var + ") throws IOException {");
+        writer.println("        if (" + var + " == null) {");
+        writer.println("            out.writeByte(0);");
+
+        for (int i = 0; i < types.size(); i++) {
+            String className = types.get(i).split(":")[0].trim();
+            String fieldList = types.get(i).split(":")[1].split("\\|")[0].trim();
+
+            writer.println("        } else if (" + var + " instanceof " + baseName + "." + className + ") {");
+            writer.println("            " + baseName + "." + className + " node = (" + baseName + "." + className + ") " + var + ";");
+            writer.println("            out.writeByte(" + (i + 1) + ");");
+            for (String field : fieldList.split(", ")) {
+                String type = field.split(" ")[0];
+                String name = field.split(" ")[1];
+                writer.println("            write" + codecName(type) + "(out, node." + name + ");");
+            }
+        }
+
+        writer.println("        } else {");
+        writer.println("            throw new IllegalArgumentException(\"Can't write \" + " + var + ".getClass().getName());");
+        writer.println("        }");
+        writer.println("    }");
+        writer.println();
+    }
+
+    private static void defineReader(PrintWriter writer, String baseName, List<String> types) {
+        writer.println("    static " + baseName + " read" + baseName + "(DataInput in) throws IOException {");
+        writer.println("        int tag = in.readUnsignedByte();");
+        writer.println("        switch (tag) {");
+        writer.println("            case 0: return null;");
+
+        for (int i = 0; i < types.size(); i++) {
+            String className = types.get(i).split(":")[0].trim();
+            String fieldList = types.get(i).split(":")[1].split("\\|")[0].trim();
+
+            // arguments are evaluated left to right, so the fields come back in the order they were written
+            StringBuilder arguments = new StringBuilder();
+            for (String field : fieldList.split(", ")) {
+                if (arguments.length() > 0) arguments.append(", ");
+                arguments.append("read").append(codecName(field.split(" ")[0])).append("(in)");
+            }
+            writer.println("            case " + (i + 1) + ": return new " + baseName + "." + className + "(" + arguments + ");");
+        }
+
+        writer.println("            default: throw new IOException(\"Bad " + baseName + " tag \" + tag);");
+        writer.println("        }");
+        writer.println("    }");
+        writer.println();
+    }
+
+    // which write.../read... pair handles a field type
+    private static String codecName(String type) {
+        switch (type) {
+            case "Expr": return "Expr";
+            case "Stmt": return "Stmt";
+            case "List<Stmt>": return "Stmts";
+            case "Token": return "Token";
+            case "Object": return "Object";
+            default: throw new IllegalArgumentException("No codec for field type " + type);
+        }
+    }
 }